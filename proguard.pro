@@ -29,3 +29,9 @@
 -keepclasseswithmembers,allowshrinking class * {
     native <methods>;
 }
+
+# Keep - Flight Recorder events. The events are read reflectively, including their annotations, and the class
+# holding them is only loaded by name once Flight Recorder is known to be available.
+-keepattributes RuntimeVisibleAnnotations
+-keep class * extends jdk.jfr.Event { *; }
+-keep class net.minecraftforge.installer.JfrEvents { <init>(); }
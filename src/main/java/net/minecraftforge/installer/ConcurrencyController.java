@@ -0,0 +1,241 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package net.minecraftforge.installer;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Limits how many downloads run at once, tuning the limit to the link it runs on.
+ * <p>
+ * The limit follows an additive increase, multiplicative decrease scheme: it starts low and grows by one for every
+ * measuring window in which the aggregate throughput still rose noticeably while downloads were queued. It is halved
+ * when a server throttles us (HTTP 429/503) or a connection times out, and cut back by a quarter when the throughput
+ * falls. Independently of the limit, no host gets more than a fixed number of downloads at once.
+ * <p>
+ * Downloads report what happened through the static {@link #transferred} and {@link #congested} methods, which apply
+ * to the permit held by the calling thread, so code deep inside a download doesn't need to know about the controller.
+ */
+public class ConcurrencyController {
+    private static final int INITIAL = 4;
+    private static final long WINDOW = 1_000_000_000L; // 1 second
+    private static final ThreadLocal<Permit> CURRENT = new ThreadLocal<>();
+
+    private final int maxConcurrency;
+    private final int maxPerHost;
+    private final Map<String, Integer> hosts = new HashMap<>();
+    private double limit;
+    private int active = 0;
+    private final List<Waiter> waiting = new LinkedList<>(); // Oldest first
+    private boolean demand = false;
+    private long windowStart = System.nanoTime();
+    private long windowBytes = 0;
+    private double lastThroughput = 0;
+    private long lastDecrease = System.nanoTime() - WINDOW;
+
+    /**
+     * Uses the limits of the current {@link InstallRequest}.
+     */
+    public ConcurrencyController() {
+        this(InstallRequest.current().getMaxDownloads(), InstallRequest.current().getMaxDownloadsPerHost());
+    }
+
+    /**
+     * @param maxConcurrency the most downloads that may ever run at once
+     * @param maxPerHost     the most downloads that may run at once against a single host
+     */
+    public ConcurrencyController(int maxConcurrency, int maxPerHost) {
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.maxPerHost = Math.max(1, maxPerHost);
+        this.limit = Math.min(INITIAL, this.maxConcurrency);
+    }
+
+    /**
+     * Waits until a download from the host of {@code url} may start.
+     *
+     * @return the permit, which must be closed once the download is done
+     */
+    public Permit acquire(@Nullable String url) throws InterruptedException {
+        String host = getHost(url);
+        await(host);
+        Permit permit = new Permit(host);
+        CURRENT.set(permit);
+        return permit;
+    }
+
+    private synchronized void await(String host) throws InterruptedException {
+        // Waiters start in the order they arrived, unless the ones before them are held back by their host's cap
+        Waiter waiter = new Waiter(host);
+        waiting.add(waiter);
+        try {
+            while (!canStart(waiter)) {
+                demand = true;
+                wait();
+            }
+        } finally {
+            waiting.remove(waiter);
+        }
+        active++;
+        hosts.merge(host, 1, Integer::sum);
+    }
+
+    private boolean canStart(Waiter waiter) {
+        if (active >= getLimit())
+            return false;
+        for (Waiter earlier : waiting) {
+            if (earlier == waiter)
+                return hosts.getOrDefault(waiter.host, 0) < maxPerHost;
+            if (hosts.getOrDefault(earlier.host, 0) < maxPerHost)
+                return false;
+        }
+        return false;
+    }
+
+    /**
+     * @return how many downloads may currently run at once
+     */
+    public synchronized int getLimit() {
+        return Math.max(1, (int) limit);
+    }
+
+    /**
+     * Records bytes received over the network by the download the calling thread holds a permit for.
+     */
+    public static void transferred(long bytes) {
+        Permit permit = CURRENT.get();
+        if (permit != null)
+            permit.bytes += bytes;
+    }
+
+    /**
+     * Records that the server throttled, or the connection timed out, for the download the calling thread holds a
+     * permit for.
+     */
+    public static void congested() {
+        Permit permit = CURRENT.get();
+        if (permit != null)
+            permit.congested = true;
+    }
+
+    /**
+     * Backs off after the server throttled the download the calling thread holds a permit for. The limit is lowered
+     * right away, and the permit is given up for the delay and only taken again once the lowered limit lets it start.
+     */
+    public static void backOff(long millis) throws InterruptedException {
+        Permit permit = CURRENT.get();
+        if (permit == null)
+            Thread.sleep(millis);
+        else
+            permit.pause(millis);
+    }
+
+    private synchronized void pause(Permit permit) {
+        active--;
+        hosts.merge(permit.host, -1, Integer::sum);
+        long now = System.nanoTime();
+        if (now - lastDecrease >= WINDOW)
+            decrease(now, 0.5);
+        notifyAll();
+    }
+
+    private synchronized void release(Permit permit) {
+        active--;
+        hosts.merge(permit.host, -1, Integer::sum);
+        windowBytes += permit.bytes;
+
+        long now = System.nanoTime();
+        if (permit.congested) {
+            // Many downloads see the same congestion at once, only back off once for it
+            if (now - lastDecrease >= WINDOW)
+                decrease(now, 0.5);
+        } else if (now - windowStart >= WINDOW && windowBytes > 0) {
+            double throughput = windowBytes / ((now - windowStart) / 1e9);
+            if (lastThroughput > 0 && throughput < lastThroughput * 0.7) {
+                decrease(now, 0.75);
+            } else {
+                if (demand && (lastThroughput == 0 || throughput > lastThroughput * 1.1))
+                    limit = Math.min(maxConcurrency, limit + 1);
+                lastThroughput = throughput;
+                resetWindow(now);
+            }
+        }
+        notifyAll();
+    }
+
+    private void decrease(long now, double factor) {
+        limit = Math.max(1, limit * factor);
+        lastDecrease = now;
+        lastThroughput = 0;
+        resetWindow(now);
+    }
+
+    private void resetWindow(long now) {
+        windowStart = now;
+        windowBytes = 0;
+        demand = !waiting.isEmpty();
+    }
+
+    private static String getHost(@Nullable String url) {
+        if (url == null || url.isEmpty())
+            return "";
+        try {
+            return new URL(url).getHost();
+        } catch (MalformedURLException e) {
+            return "";
+        }
+    }
+
+    private static class Waiter {
+        private final String host;
+
+        private Waiter(String host) {
+            this.host = host;
+        }
+    }
+
+    public class Permit implements AutoCloseable {
+        private final String host;
+        private long bytes = 0;
+        private boolean congested = false;
+        private boolean paused = false;
+
+        private Permit(String host) {
+            this.host = host;
+        }
+
+        private void pause(long millis) throws InterruptedException {
+            ConcurrencyController.this.pause(this);
+            paused = true;
+            Thread.sleep(millis);
+            await(host);
+            paused = false;
+        }
+
+        @Override
+        public void close() {
+            if (CURRENT.get() == this)
+                CURRENT.remove();
+            // Interrupted while backing off, the slot was already given up
+            if (!paused)
+                release(this);
+        }
+    }
+}
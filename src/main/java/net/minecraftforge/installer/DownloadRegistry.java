@@ -0,0 +1,74 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package net.minecraftforge.installer;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Makes sure every file is downloaded and verified only once, however often it is asked for.
+ * <p>
+ * Downloads are keyed by target file and expected SHA-1. A request for a key that was already requested, whether
+ * that download is still running or long finished, gets the same result. Requests for the same file with a different
+ * checksum run after the earlier download instead of beside it, so two downloads never write one file at once.
+ */
+public class DownloadRegistry {
+    private final Map<String, CompletableFuture<Boolean>> flights = new HashMap<>();
+    private final Map<File, CompletableFuture<Boolean>> latest = new HashMap<>();
+    private int duplicates = 0;
+
+    /**
+     * @param download performs the download, returning whether it succeeded
+     * @return the result of the first download requested for this file and checksum
+     */
+    public synchronized CompletableFuture<Boolean> download(File target, @Nullable String sha1, Supplier<Boolean> download, Executor executor) {
+        File file = target.getAbsoluteFile();
+        String key = file + "#" + sha1;
+        CompletableFuture<Boolean> flight = flights.get(key);
+        if (flight != null) {
+            duplicates++;
+            return flight;
+        }
+
+        CompletableFuture<Boolean> previous = latest.get(file);
+        flight = previous == null
+                ? CompletableFuture.supplyAsync(download, executor)
+                : previous.handle((ok, e) -> null).thenApplyAsync(v -> download.get(), executor);
+        flights.put(key, flight);
+        latest.put(file, flight);
+        return flight;
+    }
+
+    /**
+     * @return the most recent download requested for the file, or {@code null} if there is none
+     */
+    @Nullable
+    public synchronized CompletableFuture<Boolean> get(File target) {
+        return latest.get(target.getAbsoluteFile());
+    }
+
+    /**
+     * @return how many requests were answered by an earlier download
+     */
+    public synchronized int getDuplicates() {
+        return duplicates;
+    }
+}
@@ -24,17 +24,16 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.UnknownHostException;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import javax.net.ssl.SSLHandshakeException;
 import net.minecraftforge.installer.actions.ProgressCallback;
 import net.minecraftforge.installer.json.Artifact;
-import net.minecraftforge.installer.json.InstallV1;
 import net.minecraftforge.installer.json.Manifest;
 import net.minecraftforge.installer.json.Mirror;
 import net.minecraftforge.installer.json.Util;
@@ -46,11 +45,6 @@ public class DownloadUtils {
     public static final String MANIFEST_URL = "https://piston-meta.mojang.com/mc/game/version_manifest_v2.json";
     public static final String SERVER_STARTER_JAR = "https://github.com/NeoForged/serverstarterjar/releases/latest/download/server.jar";
 
-    @Nullable
-    public static String userAgent;
-
-    public static boolean OFFLINE_MODE = false;
-
     public static boolean downloadLibrary(ProgressCallback monitor, Library library, File root, Predicate<String> optional, List<Artifact> grabbed, List<File> additionalLibraryDirs) {
         Artifact artifact = library.getName();
         File target = artifact.getLocalPath(root);
@@ -76,6 +70,7 @@ public class DownloadUtils {
         if (monitor.downloader(url)
                 .additionalDirectory(additionalLibraryDirs.toArray(new File[0]))
                 .sha(download.getSha1())
+                .size(download.getSize())
                 .localPath(download.getPath())
                 .download(target)) {
             grabbed.add(artifact);
@@ -86,7 +81,22 @@ public class DownloadUtils {
 
     public static String getSha1(File target) {
         try {
-            return HashFunction.SHA1.hash(Files.readAllBytes(target.toPath())).toString();
+            return HashFunction.SHA1.hash(target);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Computes the requested digests of the file in a single pass.
+     *
+     * @return the digests, or {@code null} if the file could not be read
+     */
+    @Nullable
+    public static Map<HashFunction, String> getHashes(File target, Collection<HashFunction> functions) {
+        try {
+            return HashFunction.hashAll(target.toPath(), functions);
         } catch (IOException e) {
             e.printStackTrace();
             return null;
@@ -101,7 +111,16 @@ public class DownloadUtils {
     }
 
     public static URLConnection getConnection(String address) {
-        if (OFFLINE_MODE) {
+        return getConnection(address, Collections.emptyMap());
+    }
+
+    /**
+     * Reading from the connection isn't rate limited, wrap its stream with {@link RateLimiter#limit}.
+     *
+     * @param headers extra request headers, sent with every request including redirects
+     */
+    public static URLConnection getConnection(String address, Map<String, String> headers) {
+        if (InstallRequest.current().isOffline()) {
             System.out.println("Offline Mode: Not downloading: " + address);
             return null;
         }
@@ -123,7 +142,8 @@ public class DownloadUtils {
                 connection.setReadTimeout(5000);
                 if (connection instanceof HttpURLConnection) {
                     HttpURLConnection hcon = (HttpURLConnection) connection;
-                    hcon.setRequestProperty("User-Agent", getUserAgent());
+                    hcon.setRequestProperty("User-Agent", InstallRequest.current().getUserAgent());
+                    headers.forEach(hcon::setRequestProperty);
                     hcon.setInstanceFollowRedirects(false);
                     int res = hcon.getResponseCode();
                     if (res == HttpURLConnection.HTTP_MOVED_PERM || res == HttpURLConnection.HTTP_MOVED_TEMP) {
@@ -156,25 +176,6 @@ public class DownloadUtils {
         }
     }
 
-    private static String getUserAgent() {
-        if (userAgent == null) {
-            userAgent = "NeoForged LegacyInstaller";
-
-            String installerVersion = SimpleInstaller.class.getPackage().getImplementationVersion();
-            if (installerVersion != null) {
-                userAgent += " (" + installerVersion + ")";
-            }
-
-            try {
-                InstallV1 profile = Util.loadInstallProfile();
-                userAgent += " / " + profile.getVersion();
-            } catch (Exception ignored) {
-
-            }
-        }
-        return userAgent;
-    }
-
     public static List<String> getIps(String host) {
         try {
             InetAddress[] addresses = InetAddress.getAllByName(host);
@@ -189,7 +190,7 @@ public class DownloadUtils {
         try {
             URLConnection connection = getConnection(url);
             if (connection != null) {
-                try (InputStream stream = connection.getInputStream()) {
+                try (InputStream stream = RateLimiter.limit(connection.getInputStream())) {
                     return Util.loadMirrorList(stream);
                 }
             }
@@ -214,7 +215,9 @@ public class DownloadUtils {
         try {
             URLConnection connection = getConnection(url);
             if (connection != null) {
-                Files.copy(connection.getInputStream(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                try (InputStream stream = RateLimiter.limit(connection.getInputStream())) {
+                    IOUtils.copy(stream, target.toPath());
+                }
                 return true;
             }
         } catch (IOException e) {
@@ -224,9 +227,10 @@ public class DownloadUtils {
     }
 
     public static boolean extractFile(Artifact art, File target, String checksum) {
-        final InputStream input = DownloadUtils.class.getResourceAsStream("/maven/" + art.getPath());
-        if (input == null) {
-            System.out.println("File not found in installer archive: /maven/" + art.getPath());
+        final InstallerArchive archive = InstallRequest.current().getArchive();
+        final String path = "maven/" + art.getPath();
+        if (!archive.contains(path)) {
+            System.out.println("File not found in installer archive: /" + path);
             return false;
         }
 
@@ -234,8 +238,7 @@ public class DownloadUtils {
             target.getParentFile().mkdirs();
 
         try {
-            Files.copy(input, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
-            return checksumValid(target, checksum);
+            return archive.extract(path, target.toPath()) && checksumValid(target, checksum);
         } catch (Exception e) {
             e.printStackTrace();
             return false;
@@ -243,9 +246,9 @@ public class DownloadUtils {
     }
 
     public static boolean extractFile(String name, File target) {
+        final InstallerArchive archive = InstallRequest.current().getArchive();
         final String path = name.charAt(0) == '/' ? name : '/' + name;
-        final InputStream input = DownloadUtils.class.getResourceAsStream(path);
-        if (input == null) {
+        if (!archive.contains(path)) {
             System.out.println("File not found in installer archive: " + path);
             return false;
         }
@@ -254,8 +257,7 @@ public class DownloadUtils {
             target.getParentFile().mkdirs();
 
         try {
-            Files.copy(input, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
-            return true; //checksumValid(target, checksum); //TODO: zip checksums?
+            return archive.extract(path, target.toPath()); //checksumValid(target, checksum); //TODO: zip checksums?
         } catch (Exception e) {
             e.printStackTrace();
             return false;
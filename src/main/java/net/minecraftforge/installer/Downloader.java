@@ -16,17 +16,26 @@
 package net.minecraftforge.installer;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
-import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import net.minecraftforge.installer.actions.ProgressCallback;
@@ -37,16 +46,24 @@ import org.jetbrains.annotations.Nullable;
 public class Downloader {
     private static final Logger LOGGER = Logger.getLogger("Downloading");
     public static final LocalSource LOCAL = LocalSource.detect();
+    private static final int THROTTLED_ATTEMPTS = 5;
+    private static final long MAX_RETRY_DELAY = 60; // seconds
 
     private LocalSource localSource;
     private final ProgressCallback monitor;
     private final String url;
     private String sha1, localPath;
+    private long size = -1;
+    private final Set<HashFunction> extraDigests;
+    private Map<HashFunction, String> digests = Collections.emptyMap();
+    @Nullable
+    private ProgressCallback.DownloadSource source;
 
     public Downloader(LocalSource localSource, ProgressCallback monitor, String url) {
         this.localSource = localSource;
         this.monitor = monitor;
         this.url = url;
+        this.extraDigests = InstallRequest.current().getDigests();
     }
 
     public Downloader sha(@Nullable String sha) {
@@ -54,6 +71,14 @@ public class Downloader {
         return this;
     }
 
+    /**
+     * The expected size of the file, used to decide whether to download it in segments before the server answers.
+     */
+    public Downloader size(long size) {
+        this.size = size > 0 ? size : -1;
+        return this;
+    }
+
     public Downloader localPath(@Nullable String localPath) {
         this.localPath = localPath;
         return this;
@@ -66,84 +91,255 @@ public class Downloader {
         return this;
     }
 
+    /**
+     * Files that may already hold the download, copied instead of downloading if their checksum matches.
+     */
+    public Downloader alternatives(File... files) {
+        for (File file : files) {
+            this.localSource = this.localSource.fallbackWith(LocalSource.fromFile(file.toPath()));
+        }
+        return this;
+    }
+
+    /**
+     * Downloads the file to {@code target}, unless it already exists with the expected checksum.
+     * <p>
+     * The target is locked for the whole download, so other installers sharing the directory wait for it instead of
+     * racing it. The file is written to a temporary file next to the target, synced to disk, verified, and only then
+     * renamed into place, so a partial or corrupt file is never visible at the target path.
+     */
     public boolean download(File target) {
+        Path nio = target.toPath();
+        try {
+            if (nio.getParent() != null) Files.createDirectories(nio.getParent());
+        } catch (IOException exception) {
+            LOGGER.log(Level.WARNING, exception, () -> "Failed to create parent of " + target);
+            return false;
+        }
+
+        long start = System.nanoTime();
+        monitor.downloadStarted(url, target);
+        FlightRecorderEvents.Span span = FlightRecorderEvents.download(url, target);
+        boolean success = false;
+        try (FileLocks.Lock lock = FileLocks.lock(nio)) {
+            success = downloadLocked(target);
+            return success;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, e, () -> "Failed to lock " + target);
+            return false;
+        } finally {
+            // The extra digests of the request were computed with the checksum
+            if (success && !digests.isEmpty())
+                monitor.fileDigested(target, digests);
+            long bytes = success ? target.length() : 0;
+            monitor.downloadFinished(url, target, success ? source : null, bytes, System.nanoTime() - start, success);
+            if (success && source != null)
+                span.source(source.name().toLowerCase(Locale.ROOT));
+            span.bytes(bytes);
+            span.success(success);
+            span.close();
+        }
+    }
+
+    /**
+     * @return where the file came from, once {@link #download(File)} succeeded
+     */
+    @Nullable
+    public ProgressCallback.DownloadSource getSource() {
+        return source;
+    }
+
+    private boolean downloadLocked(File target) {
+        // Checked under the lock: another installer may have just finished downloading it
         if (target.exists() && this.sha1 != null) {
-            if (Objects.equals(this.sha1, DownloadUtils.getSha1(target))) {
+            if (Objects.equals(this.sha1, checksum(target))) {
                 monitor.message("File " + target + " exists. Checksum valid.");
+                source = ProgressCallback.DownloadSource.CACHE;
                 return true;
             } else {
-                monitor.message("File " + target + " exists. Invalid checksum, deleting file.");
-                target.delete();
+                // Replaced atomically once the new file is verified, so readers never see it missing
+                monitor.message("File " + target + " exists. Invalid checksum, downloading it again.");
             }
         }
 
         Path nio = target.toPath();
+        Path temp;
         try {
-            if (nio.getParent() != null) Files.createDirectories(nio.getParent());
+            temp = Files.createTempFile(nio.toAbsolutePath().getParent(), "." + nio.getFileName(), ".tmp");
         } catch (IOException exception) {
-            LOGGER.log(Level.WARNING, exception, () -> "Failed to create parent of " + target);
+            LOGGER.log(Level.WARNING, exception, () -> "Failed to create temporary file for " + target);
             return false;
         }
 
-        if (localPath != null) {
+        try {
+            if (localPath != null) {
+                try {
+                    LocalFile alternative = this.localSource.getArtifact(localPath);
+                    if (alternative != null) {
+                        try (InputStream stream = alternative.stream) {
+                            IOUtils.copy(stream, temp);
+                        }
+                        if (this.sha1 != null) {
+                            String actualSha = checksum(temp.toFile());
+                            if (!Objects.equals(actualSha, this.sha1)) {
+                                monitor.message("Invalid checksum. Downloaded locally from " + alternative.path);
+                                monitor.message("\tExpected: " + this.sha1);
+                                monitor.message("\tActual:   " + actualSha);
+                            } else {
+                                publish(temp, nio);
+                                source = ProgressCallback.DownloadSource.LOCAL;
+                                monitor.message("Downloaded file locally from " + alternative.path + ", valid checksum.");
+                                return true;
+                            }
+                        } else {
+                            recordDigests(temp.toFile());
+                            publish(temp, nio);
+                            source = ProgressCallback.DownloadSource.LOCAL;
+                            monitor.message("Downloaded file locally from " + alternative.path + ", no checksum provided, assuming valid.");
+                            return true;
+                        }
+                    }
+                } catch (IOException exception) {
+                    LOGGER.log(Level.WARNING, exception, () -> "Failed to download from local download source");
+                }
+            }
+
+            if (InstallRequest.current().isOffline()) {
+                monitor.message("\tFound no cached library at " + target + ", expecting download from " + url + ", but running in offline mode.");
+                return false;
+            }
+
+            monitor.message("Downloading library from " + url);
             try {
-                LocalFile alternative = this.localSource.getArtifact(localPath);
-                if (alternative != null) {
-                    Files.copy(alternative.stream, nio, StandardCopyOption.REPLACE_EXISTING);
+                URLConnection connection = DownloadUtils.getConnection(url);
+                if (connection != null) {
+                    fetch(connection, temp);
+                    source = ProgressCallback.DownloadSource.NETWORK;
+
                     if (this.sha1 != null) {
-                        String actualSha = DownloadUtils.getSha1(target);
-                        if (!Objects.equals(actualSha, this.sha1)) {
-                            monitor.message("Invalid checksum. Downloaded locally from " + alternative.path);
-                            monitor.message("\tExpected: " + this.sha1);
-                            monitor.message("\tActual:   " + actualSha);
-                        } else {
-                            monitor.message("Downloaded file locally from " + alternative.path + ", valid checksum.");
+                        String sha1 = checksum(temp.toFile());
+                        if (Objects.equals(sha1, this.sha1)) {
+                            publish(temp, nio);
+                            monitor.message("\tDownload completed: Checksum validated.");
                             return true;
                         }
+                        monitor.message("\tDownload failed: Checksum invalid, deleting file:");
+                        monitor.message("\t\tExpected: " + this.sha1);
+                        monitor.message("\t\tActual:   " + sha1);
                     } else {
-                        monitor.message("Downloaded file locally from " + alternative.path + ", no checksum provided, assuming valid.");
+                        recordDigests(temp.toFile());
+                        publish(temp, nio);
+                        monitor.message("\tDownload completed: No checksum, Assuming valid.");
                         return true;
                     }
                 }
-            } catch (IOException exception) {
-                LOGGER.log(Level.WARNING, exception, () -> "Failed to download from local download source");
+            } catch (IOException e) {
+                if (e instanceof SocketTimeoutException)
+                    ConcurrencyController.congested();
+                LOGGER.log(Level.WARNING, e, () -> "Failed to download from " + url);
             }
-        }
 
-        if (DownloadUtils.OFFLINE_MODE) {
-            monitor.message("\tFound no cached library at " + target + ", expecting download from " + url + ", but running in offline mode.");
             return false;
+        } finally {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, e, () -> "Failed to delete temporary file " + temp);
+            }
         }
+    }
 
-        monitor.message("Downloading library from " + url);
+    // Makes the verified temporary file the target in one step, after making sure its contents are on disk
+    private static void publish(Path temp, Path target) throws IOException {
+        IOUtils.sync(temp);
         try {
-            URLConnection connection = DownloadUtils.getConnection(url);
-            if (connection != null) {
-                Files.copy(monitor.wrapStepDownload(connection), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
-
-                if (this.sha1 != null) {
-                    String sha1 = DownloadUtils.getSha1(target);
-                    if (Objects.equals(sha1, this.sha1)) {
-                        monitor.message("\tDownload completed: Checksum validated.");
-                        return true;
-                    }
-                    monitor.message("\tDownload failed: Checksum invalid, deleting file:");
-                    monitor.message("\t\tExpected: " + this.sha1);
-                    monitor.message("\t\tActual:   " + sha1);
-                    if (!target.delete()) {
-                        monitor.stage("\tFailed to delete file, aborting.");
-                        return false;
-                    }
-                } else {
-                    monitor.message("\tDownload completed: No checksum, Assuming valid.");
-                    return true;
-                }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Copies the response into the target, over several connections if the file is large enough
+    private void fetch(URLConnection connection, Path target) throws IOException {
+        // A throttled download waits and retries, with fewer downloads running, before giving up
+        for (int attempt = 1; connection instanceof HttpURLConnection; attempt++) {
+            HttpURLConnection http = (HttpURLConnection) connection;
+            int code = http.getResponseCode();
+            if (code != 429 && code != HttpURLConnection.HTTP_UNAVAILABLE)
+                break;
+            if (attempt >= THROTTLED_ATTEMPTS) {
+                ConcurrencyController.congested();
+                throw new IOException("Server is throttling downloads, HTTP " + code + ": " + url);
+            }
+
+            long delay = getRetryDelay(http, attempt);
+            http.disconnect();
+            monitor.message("\tServer is throttling downloads, HTTP " + code + ", retrying in " + (delay + 999) / 1000 + "s");
+            try {
+                ConcurrencyController.backOff(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to retry " + url);
+            }
+            connection = DownloadUtils.getConnection(url);
+            if (connection == null)
+                throw new IOException("Could not reconnect to " + url);
+        }
+
+        long length = connection.getContentLengthLong() > 0 ? connection.getContentLengthLong() : size;
+        if (SegmentedDownload.supports(connection, length)) {
+            try {
+                SegmentedDownload.download(connection, url, length, target, monitor);
+                ConcurrencyController.transferred(length);
+                return;
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, e, () -> "Segmented download failed from " + url);
+                monitor.message("\tSegmented download failed, retrying over a single connection");
+                connection = DownloadUtils.getConnection(url);
+                if (connection == null)
+                    throw new IOException("Could not reconnect to " + url);
+            }
+        }
+        try (InputStream stream = RateLimiter.limit(monitor.wrapStepDownload(connection))) {
+            ConcurrencyController.transferred(IOUtils.copy(stream, target));
+        }
+    }
+
+    // Honours Retry-After in seconds, otherwise doubles from one second
+    private static long getRetryDelay(HttpURLConnection connection, int attempt) {
+        String header = connection.getHeaderField("Retry-After");
+        if (header != null) {
+            try {
+                return Math.min(Math.max(0, Long.parseLong(header.trim())), MAX_RETRY_DELAY) * 1000;
+            } catch (NumberFormatException e) {
+                // An HTTP date, fall back to the backoff
             }
-        } catch (IOException e) {
-            LOGGER.log(Level.WARNING, e, () -> "Failed to download from " + url);
         }
+        return Math.min(1L << (attempt - 1), MAX_RETRY_DELAY) * 1000;
+    }
+
+    // Hashes the file once for both the SHA-1 check and any extra digests
+    @Nullable
+    private String checksum(File target) {
+        long start = System.nanoTime();
+        try {
+            if (extraDigests.isEmpty())
+                return DownloadUtils.getSha1(target);
+            EnumSet<HashFunction> functions = EnumSet.copyOf(extraDigests);
+            functions.add(HashFunction.SHA1);
+            Map<HashFunction, String> hashes = DownloadUtils.getHashes(target, functions);
+            if (hashes == null)
+                return null;
+            digests = hashes;
+            return hashes.get(HashFunction.SHA1);
+        } finally {
+            monitor.fileHashed(target, target.length(), System.nanoTime() - start);
+        }
+    }
 
-        return false;
+    private void recordDigests(File target) {
+        if (!extraDigests.isEmpty())
+            checksum(target);
     }
 
     public InputStream openStream() throws IOException {
@@ -154,11 +350,11 @@ public class Downloader {
             }
         }
 
-        if (DownloadUtils.OFFLINE_MODE) {
+        if (InstallRequest.current().isOffline()) {
             monitor.message("\tLibrary not cached, expecting download from " + url + ", but running in offline mode.");
             throw new RuntimeException("Running in offline mode, cannot download from " + url + ", cached version not found");
         }
-        return monitor.wrapStepDownload(DownloadUtils.getConnection(url));
+        return RateLimiter.limit(monitor.wrapStepDownload(DownloadUtils.getConnection(url)));
     }
 
     public static class LocalFile {
@@ -213,17 +409,20 @@ public class Downloader {
         static LocalSource fromDir(Path base) {
             return p -> {
                 final Path children = base.resolve(p);
-                try {
-                    return new LocalFile(Files.newInputStream(children), children.toFile().getAbsolutePath());
-                } catch (NoSuchFileException ex) {
+                if (!Files.isRegularFile(children))
                     return null;
-                }
+                // A FileInputStream lets IOUtils copy it with transferTo
+                return new LocalFile(new FileInputStream(children.toFile()), children.toFile().getAbsolutePath());
             };
         }
 
+        static LocalSource fromFile(Path file) {
+            return p -> Files.isRegularFile(file) ? new LocalFile(new FileInputStream(file.toFile()), file.toFile().getAbsolutePath()) : null;
+        }
+
         static LocalSource fromResource() {
             return p -> {
-                InputStream is = DownloadUtils.class.getResourceAsStream("/maven/" + p);
+                InputStream is = InstallRequest.current().getArchive().getInputStream("maven/" + p);
                 return is == null ? null : new LocalFile(is, "jar:/maven/" + p);
             };
         }
@@ -0,0 +1,169 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package net.minecraftforge.installer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Exclusive advisory locks on files, held against other threads of this installer and against other processes.
+ * <p>
+ * The lock for a file is taken on {@code .locks/<name>.lock} in the directory of the file, so installers on other
+ * hosts sharing the directory over a network file system see the same lock. Lock files are left in place: deleting one
+ * would let a process still waiting on the old file and a process creating a new one both hold the lock, so there is
+ * at most one per file in the directory. They are made writable by everyone, as the directory may be shared by several
+ * users. Where the file system doesn't support locks, only other threads are locked out.
+ */
+public class FileLocks {
+    private static final Logger LOGGER = Logger.getLogger("FileLocks");
+    public static final String LOCK_DIR = ".locks";
+    private static final Set<PosixFilePermission> SHARED_DIR = PosixFilePermissions.fromString("rwxrwxrwx");
+    private static final Set<PosixFilePermission> SHARED_FILE = PosixFilePermissions.fromString("rw-rw-rw-");
+    // File locks are held by the whole process, so threads are kept apart separately.
+    // Entries are removed once no thread holds or waits for them.
+    private static final Map<Path, LocalLock> LOCAL = new ConcurrentHashMap<>();
+
+    public static Lock lock(Path target) throws IOException {
+        Path file = target.toAbsolutePath().normalize();
+        LocalLock local = LOCAL.compute(file, (k, v) -> {
+            if (v == null)
+                v = new LocalLock();
+            v.users++;
+            return v;
+        });
+        try {
+            local.lockInterruptibly();
+        } catch (InterruptedException e) {
+            release(file, local);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for lock on " + file);
+        }
+
+        FileChannel channel;
+        try {
+            channel = open(file.resolveSibling(LOCK_DIR).resolve(file.getFileName() + ".lock"));
+        } catch (IOException | RuntimeException e) {
+            local.unlock();
+            release(file, local);
+            throw e;
+        }
+
+        try {
+            return new Lock(file, local, channel, channel.lock());
+        } catch (IOException e) {
+            channel.close();
+            if (Thread.currentThread().isInterrupted()) {
+                local.unlock();
+                release(file, local);
+                throw e;
+            }
+            LOGGER.log(Level.WARNING, e, () -> "Could not lock " + file + ", only locking against this process");
+            return new Lock(file, local, null, null);
+        } catch (RuntimeException e) {
+            channel.close();
+            local.unlock();
+            release(file, local);
+            throw e;
+        }
+    }
+
+    // Not being able to open the lock file means we can't keep other installers out, so that fails the lock
+    private static FileChannel open(Path lockFile) throws IOException {
+        if (!Files.isDirectory(lockFile.getParent())) {
+            try {
+                share(Files.createDirectory(lockFile.getParent()), SHARED_DIR);
+            } catch (FileAlreadyExistsException e) {
+                // Created by another installer
+            }
+        }
+        try {
+            FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            share(lockFile, SHARED_FILE);
+            return channel;
+        } catch (FileAlreadyExistsException e) {
+            return FileChannel.open(lockFile, StandardOpenOption.WRITE);
+        }
+    }
+
+    // The umask applies when creating files, so the permissions are set afterwards
+    private static void share(Path path, Set<PosixFilePermission> permissions) {
+        try {
+            Files.setPosixFilePermissions(path, permissions);
+        } catch (IOException | UnsupportedOperationException e) {
+            // Not a POSIX file system
+        }
+    }
+
+    /**
+     * @return whether the directory holds lock files, which are not part of an install
+     */
+    public static boolean isLockDir(Path dir) {
+        return dir.getFileName() != null && dir.getFileName().toString().equals(LOCK_DIR);
+    }
+
+    private static void release(Path file, LocalLock local) {
+        LOCAL.computeIfPresent(file, (k, v) -> v == local && --v.users == 0 ? null : v);
+    }
+
+    // Users are only changed inside compute, which is atomic per file
+    private static class LocalLock extends ReentrantLock {
+        private int users;
+    }
+
+    public static class Lock implements AutoCloseable {
+        private final Path file;
+        private final LocalLock local;
+        @Nullable
+        private final FileChannel channel;
+        @Nullable
+        private final FileLock lock;
+
+        private Lock(Path file, LocalLock local, @Nullable FileChannel channel, @Nullable FileLock lock) {
+            this.file = file;
+            this.local = local;
+            this.channel = channel;
+            this.lock = lock;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (lock != null)
+                    lock.release();
+                if (channel != null)
+                    channel.close();
+            } finally {
+                local.unlock();
+                release(file, local);
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package net.minecraftforge.installer;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Custom JDK Flight Recorder events for the work of the installer, so a recording of a slow install shows which
+ * download, hash or processor it was waiting on.
+ * <p>
+ * The events only exist on JVMs that have Flight Recorder, older Java 8 runtimes don't. The event classes are kept in
+ * {@link JfrEvents}, which is only loaded once Flight Recorder is known to be available; everywhere else the spans
+ * returned here do nothing.
+ */
+public final class FlightRecorderEvents {
+    @Nullable
+    private static final Factory FACTORY = load();
+
+    private FlightRecorderEvents() {}
+
+    public static boolean isAvailable() {
+        return FACTORY != null;
+    }
+
+    public static Span download(String url, File target) {
+        return FACTORY == null ? Span.NOOP : FACTORY.download(url, target);
+    }
+
+    public static Span hash(Path file, String algorithms) {
+        return FACTORY == null ? Span.NOOP : FACTORY.hash(file, algorithms);
+    }
+
+    /**
+     * @param task the task of processors that run one of several, like the installer tools
+     */
+    public static Span processor(String processor, @Nullable String task) {
+        return FACTORY == null ? Span.NOOP : FACTORY.processor(processor, task);
+    }
+
+    public static Span libraries(int count) {
+        return FACTORY == null ? Span.NOOP : FACTORY.libraries(count);
+    }
+
+    @Nullable
+    private static Factory load() {
+        try {
+            Class<?> recorder = Class.forName("jdk.jfr.FlightRecorder");
+            Method available = recorder.getMethod("isAvailable");
+            if (!Boolean.TRUE.equals(available.invoke(null)))
+                return null;
+            return (Factory) Class.forName("net.minecraftforge.installer.JfrEvents").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Work being recorded, ended by closing it. What the work produced can be set before that.
+     */
+    public interface Span extends AutoCloseable {
+        Span NOOP = () -> {};
+
+        default void bytes(long bytes) {}
+
+        default void source(String source) {}
+
+        default void success(boolean success) {}
+
+        @Override
+        void close();
+    }
+
+    interface Factory {
+        Span download(String url, File target);
+
+        Span hash(Path file, String algorithms);
+
+        Span processor(String processor, @Nullable String task);
+
+        Span libraries(int count);
+    }
+}
@@ -16,14 +16,19 @@
 package net.minecraftforge.installer;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.EnumMap;
 import java.util.Locale;
+import java.util.Map;
 
 // These are all standard hashing functions the JRE is REQUIRED to have, so add a nice factory that doesn't require catching annoying exceptions;
 public enum HashFunction {
@@ -31,6 +36,12 @@ public enum HashFunction {
     SHA1("SHA-1", 40),
     SHA256("SHA-256", 64);
 
+    // Files are read through a reusable direct buffer per thread, so hashing a large jar never puts it on the heap.
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final ThreadLocal<ByteBuffer> FILE_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+    private static final ThreadLocal<byte[]> STREAM_BUFFER = ThreadLocal.withInitial(() -> new byte[64 * 1024]);
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
     private String algo;
     private String pad;
 
@@ -53,26 +64,23 @@ public enum HashFunction {
     }
 
     public String hash(File file) throws IOException {
-        try (FileInputStream fin = new FileInputStream(file)) {
-            return hash(fin);
-        }
+        return hash(file.toPath());
     }
 
-    public String hash(Iterable<File> files) throws IOException {
+    public String hash(Path file) throws IOException {
         MessageDigest hash = get();
-        byte[] buf = new byte[1024];
+        update(file, hash);
+        return toHex(hash.digest());
+    }
 
+    public String hash(Iterable<File> files) throws IOException {
+        MessageDigest hash = get();
         for (File file : files) {
             if (!file.exists())
                 continue;
-
-            try (FileInputStream fin = new FileInputStream(file)) {
-                int count = -1;
-                while ((count = fin.read(buf)) != -1)
-                    hash.update(buf, 0, count);
-            }
+            update(file.toPath(), hash);
         }
-        return pad(new BigInteger(1, hash.digest()).toString(16));
+        return toHex(hash.digest());
     }
 
     public String hash(String data) {
@@ -81,18 +89,95 @@ public enum HashFunction {
 
     public String hash(InputStream stream) throws IOException {
         MessageDigest hash = get();
-        byte[] buf = new byte[1024];
+        byte[] buf = STREAM_BUFFER.get();
         int count = -1;
         while ((count = stream.read(buf)) != -1)
             hash.update(buf, 0, count);
-        return pad(new BigInteger(1, hash.digest()).toString(16));
+        return toHex(hash.digest());
     }
 
     public String hash(byte[] data) {
-        return pad(new BigInteger(1, get().digest(data)).toString(16));
+        return toHex(get().digest(data));
     }
 
     public String pad(String hash) {
         return (pad + hash).substring(hash.length());
     }
+
+    /**
+     * Computes several digests of a file with a single read of it.
+     */
+    public static Map<HashFunction, String> hashAll(Path file, Collection<HashFunction> functions) throws IOException {
+        MessageDigest[] digests = digests(functions);
+        update(file, digests);
+        return results(functions, digests);
+    }
+
+    /**
+     * Computes several digests of a stream with a single read of it, the stream is not closed.
+     */
+    public static Map<HashFunction, String> hashAll(InputStream stream, Collection<HashFunction> functions) throws IOException {
+        MessageDigest[] digests = digests(functions);
+        byte[] buf = STREAM_BUFFER.get();
+        int count = -1;
+        while ((count = stream.read(buf)) != -1) {
+            for (MessageDigest digest : digests)
+                digest.update(buf, 0, count);
+        }
+        return results(functions, digests);
+    }
+
+    private static MessageDigest[] digests(Collection<HashFunction> functions) {
+        MessageDigest[] digests = new MessageDigest[functions.size()];
+        int x = 0;
+        for (HashFunction func : functions)
+            digests[x++] = func.get();
+        return digests;
+    }
+
+    private static Map<HashFunction, String> results(Collection<HashFunction> functions, MessageDigest[] digests) {
+        Map<HashFunction, String> ret = new EnumMap<>(HashFunction.class);
+        int x = 0;
+        for (HashFunction func : functions)
+            ret.put(func, toHex(digests[x++].digest()));
+        return ret;
+    }
+
+    private static void update(Path file, MessageDigest... digests) throws IOException {
+        ByteBuffer buf = FILE_BUFFER.get();
+        try (FlightRecorderEvents.Span span = FlightRecorderEvents.hash(file, algorithms(digests));
+                FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            span.bytes(channel.size());
+            buf.clear();
+            while (channel.read(buf) != -1) {
+                buf.flip();
+                for (MessageDigest digest : digests) {
+                    buf.position(0);
+                    digest.update(buf);
+                }
+                buf.clear();
+            }
+        }
+    }
+
+    private static String algorithms(MessageDigest... digests) {
+        if (digests.length == 1)
+            return digests[0].getAlgorithm();
+        StringBuilder ret = new StringBuilder();
+        for (MessageDigest digest : digests)
+            ret.append(ret.length() == 0 ? "" : ", ").append(digest.getAlgorithm());
+        return ret.toString();
+    }
+
+    /**
+     * Lowercase hex encoding of the digest, zero padded to the full digest length.
+     */
+    public static String toHex(byte[] digest) {
+        char[] chars = new char[digest.length * 2];
+        for (int x = 0; x < digest.length; x++) {
+            chars[x * 2] = HEX[(digest[x] >> 4) & 0xF];
+            chars[x * 2 + 1] = HEX[digest[x] & 0xF];
+        }
+        return new String(chars);
+    }
 }
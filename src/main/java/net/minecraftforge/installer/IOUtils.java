@@ -0,0 +1,137 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package net.minecraftforge.installer;
+
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Copy helpers that keep the number of syscalls per copied byte low.
+ * <p>
+ * File to file copies, including entries stored in the installer archive, are done in kernel space with
+ * {@link FileChannel#transferTo}. Everything else (network bodies, compressed entries) is read into a large
+ * per-thread buffer, filled as far as the source allows before every write.
+ * <p>
+ * Downloads can't be copied in kernel space: {@link java.net.HttpURLConnection} only hands out an
+ * {@link InputStream}, never the socket channel, and the body may be chunked or decoded on the way.
+ */
+public class IOUtils {
+    public static final int BUFFER_SIZE = 256 * 1024;
+
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+    /**
+     * Copies the stream to the target file, replacing it if it exists. The stream is not closed.
+     *
+     * @return the number of bytes copied
+     */
+    public static long copy(InputStream source, Path target) throws IOException {
+        try (FileChannel out = openForWrite(target)) {
+            if (source instanceof FileInputStream) {
+                FileChannel in = ((FileInputStream) source).getChannel();
+                long position = in.position();
+                long count = transfer(in, position, in.size() - position, out);
+                in.position(position + count); // transferTo leaves the position alone, a read would have moved it
+                return count;
+            }
+            if (source instanceof InstallerArchive.RangeInputStream)
+                return ((InstallerArchive.RangeInputStream) source).transferTo(out);
+
+            byte[] buf = BUFFER.get();
+            long total = 0;
+            int filled;
+            while ((filled = fill(source, buf)) > 0) {
+                ByteBuffer wrapped = ByteBuffer.wrap(buf, 0, filled);
+                while (wrapped.hasRemaining())
+                    out.write(wrapped);
+                total += filled;
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Copies one file to another, replacing the target if it exists.
+     *
+     * @return the number of bytes copied
+     */
+    public static long copy(Path source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                FileChannel out = openForWrite(target)) {
+            return transfer(in, 0, in.size(), out);
+        }
+    }
+
+    /**
+     * Copies the stream into another stream, neither stream is closed.
+     *
+     * @return the number of bytes copied
+     */
+    public static long copy(InputStream source, OutputStream target) throws IOException {
+        byte[] buf = BUFFER.get();
+        long total = 0;
+        int filled;
+        while ((filled = fill(source, buf)) > 0) {
+            target.write(buf, 0, filled);
+            total += filled;
+        }
+        return total;
+    }
+
+    /**
+     * Forces the contents of the file to the storage device.
+     */
+    public static void sync(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    static long transfer(FileChannel in, long position, long count, FileChannel out) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            long transferred = in.transferTo(position, remaining, out);
+            if (transferred <= 0)
+                throw new EOFException("Unexpected end of file, " + remaining + " bytes missing");
+            position += transferred;
+            remaining -= transferred;
+        }
+        return count;
+    }
+
+    // Network streams hand out whatever the socket has ready, keep reading so each write is as large as possible.
+    private static int fill(InputStream source, byte[] buf) throws IOException {
+        int filled = 0;
+        while (filled < buf.length) {
+            int read = source.read(buf, filled, buf.length - filled);
+            if (read <= 0)
+                break;
+            filled += read;
+        }
+        return filled;
+    }
+
+    private static FileChannel openForWrite(Path target) throws IOException {
+        return FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+}
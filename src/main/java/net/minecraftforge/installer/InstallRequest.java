@@ -0,0 +1,394 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package net.minecraftforge.installer;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import net.minecraftforge.installer.actions.Actions;
+import net.minecraftforge.installer.actions.FatInstallerAction;
+import net.minecraftforge.installer.actions.ProgressCallback;
+import net.minecraftforge.installer.json.Util;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Everything a single install is configured with: what to install where, and how to download and process it.
+ * <p>
+ * An install reads its request through {@link #current()}, which returns the request bound to the calling thread. The
+ * {@link InstallerEngine} binds the request for the install it runs, and the thread pools of the installer bind it on
+ * their threads, so installs with different requests can run side by side in one process. Code running outside of
+ * any install sees a request with the default settings.
+ * <p>
+ * Requests are set up with the chained setters and must not be changed once an install uses them.
+ */
+public class InstallRequest {
+    private static final ThreadLocal<InstallRequest> CURRENT = new ThreadLocal<>();
+    private static final InstallRequest DEFAULTS = new InstallRequest();
+
+    @Nullable
+    private Actions action;
+    private List<File> targets = Collections.emptyList();
+    @Nullable
+    private File installer;
+    @Nullable
+    private InstallerArchive archive;
+    private Predicate<String> optionals = a -> true;
+    private ProgressCallback monitor = ProgressCallback.TO_STD_OUT;
+    private List<File> sharedLibraries = Collections.emptyList();
+
+    private boolean headless = true;
+    private boolean debug = false;
+    private boolean offline = false;
+    @Nullable
+    private URL mirror;
+    @Nullable
+    private File workDir;
+    private boolean pipelined = false;
+    private boolean serverStarterJar = false;
+    private EnumSet<FatInstallerAction.Options> fatOptions = EnumSet.noneOf(FatInstallerAction.Options.class);
+    private EnumSet<HashFunction> digests = EnumSet.noneOf(HashFunction.class);
+    private long segmentThreshold = 16L * 1024 * 1024;
+    private int maxDownloads = 16;
+    private int maxDownloadsPerHost = 6;
+    @Nullable
+    private RateLimiter rateLimiter;
+    @Nullable
+    private String userAgent;
+
+    /**
+     * @return the request of the install running on this thread, or the defaults outside of an install
+     */
+    public static InstallRequest current() {
+        InstallRequest request = CURRENT.get();
+        return request == null ? DEFAULTS : request;
+    }
+
+    /**
+     * Makes this the request of the calling thread, until the binding is closed.
+     */
+    public Binding bind() {
+        Binding binding = new Binding(CURRENT.get());
+        CURRENT.set(this);
+        return binding;
+    }
+
+    /**
+     * Wraps a task so it runs with this request bound, for threads started on behalf of the install.
+     */
+    public Runnable wrap(Runnable task) {
+        return () -> {
+            try (Binding binding = bind()) {
+                task.run();
+            }
+        };
+    }
+
+    public InstallRequest copy() {
+        InstallRequest ret = new InstallRequest();
+        ret.action = action;
+        ret.targets = targets;
+        ret.installer = installer;
+        ret.archive = archive;
+        ret.optionals = optionals;
+        ret.monitor = monitor;
+        ret.sharedLibraries = sharedLibraries;
+        ret.headless = headless;
+        ret.debug = debug;
+        ret.offline = offline;
+        ret.mirror = mirror;
+        ret.workDir = workDir;
+        ret.pipelined = pipelined;
+        ret.serverStarterJar = serverStarterJar;
+        ret.fatOptions = EnumSet.copyOf(fatOptions);
+        ret.digests = EnumSet.copyOf(digests);
+        ret.segmentThreshold = segmentThreshold;
+        ret.maxDownloads = maxDownloads;
+        ret.maxDownloadsPerHost = maxDownloadsPerHost;
+        ret.rateLimiter = rateLimiter;
+        ret.userAgent = userAgent;
+        return ret;
+    }
+
+    public InstallRequest action(Actions action) {
+        this.action = action;
+        return this;
+    }
+
+    public InstallRequest target(File target) {
+        this.targets = Collections.singletonList(target);
+        return this;
+    }
+
+    /**
+     * Several targets are only supported by server installs, which install once and copy the result into each.
+     */
+    public InstallRequest targets(List<File> targets) {
+        this.targets = new ArrayList<>(targets);
+        return this;
+    }
+
+    public InstallRequest installer(File installer) {
+        this.installer = installer;
+        return this;
+    }
+
+    /**
+     * The installer archive to install from, by default that of the running installer.
+     */
+    public InstallRequest archive(InstallerArchive archive) {
+        this.archive = archive;
+        return this;
+    }
+
+    public InstallRequest optionals(Predicate<String> optionals) {
+        this.optionals = optionals;
+        return this;
+    }
+
+    public InstallRequest monitor(ProgressCallback monitor) {
+        this.monitor = monitor;
+        return this;
+    }
+
+    /**
+     * Library directories of other installs to take verified libraries and processor outputs from.
+     */
+    public InstallRequest shareLibrariesFrom(Collection<File> librariesDirs) {
+        this.sharedLibraries = new ArrayList<>(librariesDirs);
+        return this;
+    }
+
+    /**
+     * Whether errors are only reported to the monitor, instead of also in dialogs.
+     */
+    public InstallRequest headless(boolean headless) {
+        this.headless = headless;
+        return this;
+    }
+
+    /**
+     * Whether to keep temporary files.
+     */
+    public InstallRequest debug(boolean debug) {
+        this.debug = debug;
+        return this;
+    }
+
+    public InstallRequest offline(boolean offline) {
+        this.offline = offline;
+        return this;
+    }
+
+    public InstallRequest mirror(@Nullable URL mirror) {
+        this.mirror = mirror;
+        return this;
+    }
+
+    /**
+     * The directory for the temporary files of processors, by default chosen by {@link net.minecraftforge.installer.actions.Workspace}.
+     */
+    public InstallRequest workDir(@Nullable File workDir) {
+        this.workDir = workDir;
+        return this;
+    }
+
+    public InstallRequest pipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+        return this;
+    }
+
+    public InstallRequest serverStarterJar(boolean serverStarterJar) {
+        this.serverStarterJar = serverStarterJar;
+        return this;
+    }
+
+    public InstallRequest fatOption(FatInstallerAction.Options option) {
+        this.fatOptions.add(option);
+        return this;
+    }
+
+    /**
+     * Also compute this digest of every downloaded library and verified processor output, in the same pass as the
+     * SHA-1 check. They are reported through {@link ProgressCallback#fileDigested}.
+     */
+    public InstallRequest digest(HashFunction function) {
+        this.digests.add(function);
+        return this;
+    }
+
+    /**
+     * Files at least this large are downloaded in segments, {@code 0} disables segmented downloads.
+     */
+    public InstallRequest segmentThreshold(long bytes) {
+        this.segmentThreshold = bytes;
+        return this;
+    }
+
+    public InstallRequest maxDownloads(int maxDownloads) {
+        this.maxDownloads = Math.max(1, maxDownloads);
+        return this;
+    }
+
+    public InstallRequest maxDownloadsPerHost(int maxDownloadsPerHost) {
+        this.maxDownloadsPerHost = Math.max(1, maxDownloadsPerHost);
+        return this;
+    }
+
+    /**
+     * Limits the bandwidth of all downloads of the install. The limiter may be shared with other requests.
+     */
+    public InstallRequest rateLimiter(@Nullable RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+        return this;
+    }
+
+    public InstallRequest userAgent(String userAgent) {
+        this.userAgent = userAgent;
+        return this;
+    }
+
+    @Nullable
+    public Actions getAction() {
+        return action;
+    }
+
+    public List<File> getTargets() {
+        return targets;
+    }
+
+    /**
+     * @return the installer jar, which processors may read from
+     */
+    @Nullable
+    public File getInstaller() {
+        return installer != null ? installer : getArchive().getFile();
+    }
+
+    public InstallerArchive getArchive() {
+        return archive != null ? archive : InstallerArchive.current();
+    }
+
+    public Predicate<String> getOptionals() {
+        return optionals;
+    }
+
+    public ProgressCallback getMonitor() {
+        return monitor;
+    }
+
+    public List<File> getSharedLibraries() {
+        return sharedLibraries;
+    }
+
+    public boolean isHeadless() {
+        return headless;
+    }
+
+    public boolean isDebug() {
+        return debug;
+    }
+
+    public boolean isOffline() {
+        return offline;
+    }
+
+    @Nullable
+    public URL getMirror() {
+        return mirror;
+    }
+
+    @Nullable
+    public File getWorkDir() {
+        return workDir;
+    }
+
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    public boolean isServerStarterJar() {
+        return serverStarterJar;
+    }
+
+    public Set<FatInstallerAction.Options> getFatOptions() {
+        return Collections.unmodifiableSet(fatOptions);
+    }
+
+    public Set<HashFunction> getDigests() {
+        return Collections.unmodifiableSet(digests);
+    }
+
+    public long getSegmentThreshold() {
+        return segmentThreshold;
+    }
+
+    public int getMaxDownloads() {
+        return maxDownloads;
+    }
+
+    public int getMaxDownloadsPerHost() {
+        return maxDownloadsPerHost;
+    }
+
+    @Nullable
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * @return the configured user agent, by default naming the installer and the version it installs
+     */
+    public synchronized String getUserAgent() {
+        if (userAgent == null) {
+            userAgent = "NeoForged LegacyInstaller";
+
+            String installerVersion = SimpleInstaller.class.getPackage().getImplementationVersion();
+            if (installerVersion != null) {
+                userAgent += " (" + installerVersion + ")";
+            }
+
+            try {
+                userAgent += " / " + Util.loadInstallProfile(getArchive()).getVersion();
+            } catch (Exception ignored) {
+
+            }
+        }
+        return userAgent;
+    }
+
+    public static class Binding implements AutoCloseable {
+        @Nullable
+        private final InstallRequest previous;
+
+        private Binding(@Nullable InstallRequest previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            if (previous == null)
+                CURRENT.remove();
+            else
+                CURRENT.set(previous);
+        }
+    }
+}
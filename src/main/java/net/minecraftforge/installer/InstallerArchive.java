@@ -0,0 +1,383 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package net.minecraftforge.installer;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Random access view of the installer jar.
+ * <p>
+ * The central directory is read once when the archive is opened, after that entries are served straight from the
+ * file with positional reads, so lookups don't go through the classloader and concurrent readers don't contend.
+ * Entries that are STORED in the jar are extracted with {@link FileChannel#transferTo}, see {@link IOUtils}.
+ * <p>
+ * When the installer isn't running from a jar (i.e. from the IDE) entries are looked up as classpath resources instead.
+ */
+public class InstallerArchive implements Closeable {
+    private static final int EOCD_SIG = 0x06054b50;
+    private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+    private static final int ZIP64_EOCD_SIG = 0x06064b50;
+    private static final int CEN_SIG = 0x02014b50;
+    private static final int LOC_SIG = 0x04034b50;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    private static InstallerArchive current;
+
+    @Nullable
+    private final File file;
+    @Nullable
+    private final FileChannel channel;
+    private final Map<String, Entry> entries;
+
+    private InstallerArchive(@Nullable File file, @Nullable FileChannel channel, Map<String, Entry> entries) {
+        this.file = file;
+        this.channel = channel;
+        this.entries = entries;
+    }
+
+    /**
+     * The archive of the installer that is currently running. It is empty when not running from a jar, like in an IDE.
+     *
+     * @throws UncheckedIOException if the installer jar can't be read, nothing could be installed from it
+     */
+    public static synchronized InstallerArchive current() {
+        if (current == null) {
+            Path path;
+            try {
+                URL url = InstallerArchive.class.getProtectionDomain().getCodeSource().getLocation();
+                path = url.getProtocol().equals("file") ? Paths.get(url.toURI()) : null;
+            } catch (URISyntaxException e) {
+                throw new RuntimeException(e);
+            }
+            try {
+                current = path != null && Files.isRegularFile(path) ? open(path.toFile()) : new InstallerArchive(null, null, Collections.emptyMap());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read the installer jar " + path, e);
+            }
+        }
+        return current;
+    }
+
+    public static InstallerArchive open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            return new InstallerArchive(file, channel, readCentralDirectory(channel));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Nullable
+    public File getFile() {
+        return file;
+    }
+
+    public boolean contains(String name) {
+        name = normalize(name);
+        if (channel == null)
+            return InstallerArchive.class.getResource('/' + name) != null;
+        return entries.containsKey(name);
+    }
+
+    /**
+     * @return the uncompressed size of the entry, or {@code -1} if it is missing or unknown
+     */
+    public long getSize(String name) {
+        Entry entry = entries.get(normalize(name));
+        return entry == null ? -1 : entry.size;
+    }
+
+    @Nullable
+    public InputStream getInputStream(String name) throws IOException {
+        name = normalize(name);
+        if (channel == null)
+            return InstallerArchive.class.getResourceAsStream('/' + name);
+
+        Entry entry = entries.get(name);
+        if (entry == null)
+            return null;
+
+        RangeInputStream raw = new RangeInputStream(channel, dataOffset(entry), entry.compressedSize);
+        if (entry.method == STORED)
+            return raw;
+        if (entry.method == DEFLATED)
+            return new EntryInflaterInputStream(raw, entry.size);
+        throw new ZipException("Unsupported compression method " + entry.method + " for " + name);
+    }
+
+    /**
+     * Extracts the entry to the given file, replacing it if it exists.
+     *
+     * @return {@code false} if the entry does not exist
+     */
+    public boolean extract(String name, Path target) throws IOException {
+        try (InputStream stream = getInputStream(name)) {
+            if (stream == null)
+                return false;
+            IOUtils.copy(stream, target);
+            return true;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null)
+            channel.close();
+    }
+
+    private static String normalize(String name) {
+        return name.charAt(0) == '/' ? name.substring(1) : name;
+    }
+
+    // The central directory doesn't know the length of the local header's extra field, so resolve it on first use.
+    private long dataOffset(Entry entry) throws IOException {
+        if (entry.dataOffset < 0) {
+            ByteBuffer loc = read(channel, entry.headerOffset, 30);
+            if (loc.getInt(0) != LOC_SIG)
+                throw new ZipException("Invalid local header for " + entry.name);
+            entry.dataOffset = entry.headerOffset + 30 + (loc.getShort(26) & 0xFFFF) + (loc.getShort(28) & 0xFFFF);
+        }
+        return entry.dataOffset;
+    }
+
+    private static Map<String, Entry> readCentralDirectory(FileChannel channel) throws IOException {
+        long size = channel.size();
+        int tail = (int) Math.min(size, 0xFFFF + 22);
+        ByteBuffer end = read(channel, size - tail, tail);
+        int eocd = -1;
+        for (int x = tail - 22; x >= 0; x--) {
+            if (end.getInt(x) == EOCD_SIG) {
+                eocd = x;
+                break;
+            }
+        }
+        if (eocd == -1)
+            throw new ZipException("Missing end of central directory, not a zip file");
+
+        long eocdPos = size - tail + eocd;
+        long count = end.getShort(eocd + 10) & 0xFFFF;
+        long cenSize = end.getInt(eocd + 12) & 0xFFFFFFFFL;
+        long cenOffset = end.getInt(eocd + 16) & 0xFFFFFFFFL;
+        long cenPos = eocdPos - cenSize;
+
+        if ((count == 0xFFFF || cenSize == 0xFFFFFFFFL || cenOffset == 0xFFFFFFFFL) && eocd >= 20 && end.getInt(eocd - 20) == ZIP64_LOCATOR_SIG) {
+            long zip64Pos = end.getLong(eocd - 20 + 8);
+            ByteBuffer zip64 = read(channel, zip64Pos, 56);
+            if (zip64.getInt(0) != ZIP64_EOCD_SIG)
+                throw new ZipException("Invalid zip64 end of central directory");
+            count = zip64.getLong(32);
+            cenSize = zip64.getLong(40);
+            cenOffset = zip64.getLong(48);
+            cenPos = zip64Pos - cenSize;
+        }
+
+        // Anything prepended to the jar (e.g. an exe stub) shifts every offset
+        long base = cenPos - cenOffset;
+        if (cenSize > Integer.MAX_VALUE)
+            throw new ZipException("Central directory too large");
+        ByteBuffer cen = read(channel, cenPos, (int) cenSize);
+
+        Map<String, Entry> entries = new HashMap<>((int) Math.min(count * 2, Integer.MAX_VALUE));
+        int pos = 0;
+        for (long x = 0; x < count; x++) {
+            if (cen.getInt(pos) != CEN_SIG)
+                throw new ZipException("Invalid central directory header");
+            int method = cen.getShort(pos + 10) & 0xFFFF;
+            long compressedSize = cen.getInt(pos + 20) & 0xFFFFFFFFL;
+            long uncompressedSize = cen.getInt(pos + 24) & 0xFFFFFFFFL;
+            int nameLen = cen.getShort(pos + 28) & 0xFFFF;
+            int extraLen = cen.getShort(pos + 30) & 0xFFFF;
+            int commentLen = cen.getShort(pos + 32) & 0xFFFF;
+            long headerOffset = cen.getInt(pos + 42) & 0xFFFFFFFFL;
+
+            byte[] nameBytes = new byte[nameLen];
+            cen.position(pos + 46);
+            cen.get(nameBytes);
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+            // Zip64 extended information, fields are only present when the header value is saturated
+            int extra = pos + 46 + nameLen;
+            int extraEnd = extra + extraLen;
+            while (extra + 4 <= extraEnd) {
+                int tag = cen.getShort(extra) & 0xFFFF;
+                int len = cen.getShort(extra + 2) & 0xFFFF;
+                if (tag == 0x0001) {
+                    int field = extra + 4;
+                    if (uncompressedSize == 0xFFFFFFFFL) {
+                        uncompressedSize = cen.getLong(field);
+                        field += 8;
+                    }
+                    if (compressedSize == 0xFFFFFFFFL) {
+                        compressedSize = cen.getLong(field);
+                        field += 8;
+                    }
+                    if (headerOffset == 0xFFFFFFFFL)
+                        headerOffset = cen.getLong(field);
+                    break;
+                }
+                extra += 4 + len;
+            }
+
+            if (!name.endsWith("/"))
+                entries.put(name, new Entry(name, method, compressedSize, uncompressedSize, base + headerOffset));
+            pos += 46 + nameLen + extraLen + commentLen;
+        }
+        return entries;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0)
+                throw new EOFException("Unexpected end of installer archive");
+        }
+        buf.flip();
+        return buf;
+    }
+
+    private static class Entry {
+        private final String name;
+        private final int method;
+        private final long compressedSize;
+        private final long size;
+        private final long headerOffset;
+        private volatile long dataOffset = -1;
+
+        private Entry(String name, int method, long compressedSize, long size, long headerOffset) {
+            this.name = name;
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.headerOffset = headerOffset;
+        }
+    }
+
+    /**
+     * Reads a slice of the archive using positional reads, so any number of these can be open at once.
+     */
+    static class RangeInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private final long end;
+
+        RangeInputStream(FileChannel channel, long position, long length) {
+            this.channel = channel;
+            this.position = position;
+            this.end = position + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end)
+                return -1;
+            ByteBuffer buf = ByteBuffer.wrap(b, off, (int) Math.min(len, end - position));
+            int read = channel.read(buf, position);
+            if (read > 0)
+                position += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, end - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - position);
+        }
+
+        long transferTo(FileChannel target) throws IOException {
+            long count = IOUtils.transfer(channel, position, end - position, target);
+            position = end;
+            return count;
+        }
+    }
+
+    private static class EntryInflaterInputStream extends InflaterInputStream {
+        private final long size;
+        private boolean eof = false;
+        private boolean closed = false;
+
+        private EntryInflaterInputStream(InputStream in, long size) {
+            super(in, new Inflater(true), (int) Math.max(Math.min(size, 64 * 1024), 512));
+            this.size = size;
+        }
+
+        @Override
+        protected void fill() throws IOException {
+            if (eof)
+                throw new EOFException("Unexpected end of ZLIB input stream");
+            len = in.read(buf, 0, buf.length);
+            if (len == -1) {
+                // Raw inflate may need one byte past the end of the data, same as ZipFile does
+                buf[0] = 0;
+                len = 1;
+                eof = true;
+            }
+            inf.setInput(buf, 0, len);
+        }
+
+        @Override
+        public int available() throws IOException {
+            if (closed)
+                return 0;
+            long avail = size - inf.getBytesWritten();
+            return avail > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) avail;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                inf.end();
+                super.close();
+            }
+        }
+    }
+}
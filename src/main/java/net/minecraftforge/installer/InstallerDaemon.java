@@ -0,0 +1,424 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package net.minecraftforge.installer;
+
+import com.google.gson.JsonParseException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import net.minecraftforge.installer.actions.ActionCanceledException;
+import net.minecraftforge.installer.actions.Actions;
+import net.minecraftforge.installer.actions.DelegatingProgressCallback;
+import net.minecraftforge.installer.actions.ProgressCallback;
+import net.minecraftforge.installer.json.Util;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Keeps one installer process running and accepts install jobs over a local HTTP API, so each install doesn't pay for
+ * starting a JVM, loading classes, setting up TLS and warming up the JIT again.
+ * <p>
+ * The API only listens on the loopback interface, and every request must carry the token of the daemon as
+ * {@code Authorization: Bearer <token>}. Requests with an {@code Origin} header are refused, so web pages can't reach it.
+ * <ul>
+ * <li>{@code POST /jobs} with a JSON body like
+ * {@code {"installer": "neoforge-installer.jar", "action": "server", "targets": ["servers/a"]}} queues a job and
+ * returns its id. The body must be sent as {@code application/json}. The installer defaults to the one running the
+ * daemon, {@code serverStarterJar} may also be set.</li>
+ * <li>{@code GET /jobs} and {@code GET /jobs/<id>} return the state of all jobs or one job.</li>
+ * <li>{@code GET /jobs/<id>/log} streams the progress messages of a job as plain text until it is done, ending with
+ * its final state.</li>
+ * <li>{@code DELETE /jobs/<id>} cancels a job, or forgets it once it is done.</li>
+ * </ul>
+ * Jobs run with the settings the daemon was started with, like mirrors, download limits and the monitor. Only the last
+ * {@value #KEEP_FINISHED} finished jobs are kept.
+ */
+public class InstallerDaemon {
+    private static final int KEEP_FINISHED = 100;
+
+    private final InstallRequest defaults;
+    private final ProgressCallback log;
+    private final InstallerEngine engine = new InstallerEngine();
+    private final ExecutorService workers;
+    // Sorted by id, so the oldest jobs come first
+    private final Map<Integer, Job> jobs = new ConcurrentSkipListMap<>();
+    private final AtomicInteger ids = new AtomicInteger();
+    private final String token;
+    @Nullable
+    private HttpServer server;
+
+    /**
+     * @param defaults the settings every job starts from, job messages also go to its monitor
+     * @param log      receives the messages of the daemon
+     * @param parallel how many jobs may run at once
+     */
+    public InstallerDaemon(InstallRequest defaults, ProgressCallback log, int parallel) {
+        this.defaults = defaults;
+        this.log = log;
+        this.workers = Executors.newFixedThreadPool(Math.max(1, parallel), r -> new Thread(r, "Installer-Daemon-Job"));
+        byte[] random = new byte[24];
+        new SecureRandom().nextBytes(random);
+        this.token = Base64.getUrlEncoder().withoutPadding().encodeToString(random);
+    }
+
+    /**
+     * Starts listening on the loopback interface, {@code 0} picks a free port.
+     */
+    public void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/jobs", this::handle);
+        // Log streams block until their job is done, so each request gets its own thread
+        server.setExecutor(Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "Installer-Daemon-HTTP");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+        log.message("Installer daemon listening on http://" + server.getAddress().getHostString() + ":" + getPort() + "/jobs");
+    }
+
+    /**
+     * The token clients have to send with every request.
+     */
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * Writes the token to a file only the current user can read, for clients to pick up.
+     */
+    public void writeToken(Path file) throws IOException {
+        Files.deleteIfExists(file);
+        try {
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            Files.createFile(file);
+        }
+        Files.write(file, token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public int getPort() {
+        return server == null ? -1 : server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting requests and cancels the jobs that are still running.
+     */
+    public void stop() {
+        if (server != null)
+            server.stop(0);
+        workers.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (exchange.getRequestHeaders().containsKey("Origin")) {
+                respond(exchange, 403, error("Requests from web pages are not accepted"));
+                return;
+            }
+            if (!isAuthorized(exchange)) {
+                exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+                respond(exchange, 401, error("Missing or wrong token"));
+                return;
+            }
+
+            String[] path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/");
+            String method = exchange.getRequestMethod();
+            if (path.length == 1) {
+                if (method.equals("POST"))
+                    submit(exchange);
+                else if (method.equals("GET"))
+                    respond(exchange, 200, jobs.values().stream().map(Job::getStatus).collect(Collectors.toList()));
+                else
+                    respond(exchange, 405, error("Use GET or POST"));
+                return;
+            }
+
+            Job job;
+            try {
+                job = jobs.get(Integer.parseInt(path[1]));
+            } catch (NumberFormatException e) {
+                job = null;
+            }
+            if (job == null) {
+                respond(exchange, 404, error("No such job"));
+            } else if (path.length == 2 && method.equals("GET")) {
+                respond(exchange, 200, job.getStatus());
+            } else if (path.length == 2 && method.equals("DELETE")) {
+                if (job.isDone())
+                    jobs.remove(job.id);
+                else
+                    job.cancel();
+                respond(exchange, 200, job.getStatus());
+            } else if (path.length == 3 && path[2].equals("log") && method.equals("GET")) {
+                streamLog(exchange, job);
+            } else {
+                respond(exchange, 404, error("Unknown request"));
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            respond(exchange, 500, error(e.toString()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private boolean isAuthorized(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.startsWith("Bearer "))
+            return false;
+        return MessageDigest.isEqual(header.substring(7).trim().getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void submit(HttpExchange exchange) throws IOException {
+        // Browsers may send plain text anywhere without asking first, JSON they may not
+        String type = exchange.getRequestHeaders().getFirst("Content-Type");
+        if (type == null || !type.toLowerCase(Locale.ROOT).startsWith("application/json")) {
+            respond(exchange, 415, error("Jobs must be sent as application/json"));
+            return;
+        }
+
+        JobSpec spec;
+        try (InputStreamReader reader = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+            spec = Util.GSON.fromJson(reader, JobSpec.class);
+        } catch (JsonParseException e) {
+            respond(exchange, 400, error("Invalid job: " + e.getMessage()));
+            return;
+        }
+
+        Actions action;
+        try {
+            action = spec == null || spec.action == null ? null : Actions.valueOf(spec.action.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            action = null;
+        }
+        if (action == null || spec.targets == null || spec.targets.isEmpty()) {
+            respond(exchange, 400, error("A job needs an action (client, server or fat_installer) and targets"));
+            return;
+        }
+
+        prune();
+        Job job = new Job(ids.incrementAndGet(), spec, action);
+        jobs.put(job.id, job);
+        job.future = workers.submit(job::run);
+        respond(exchange, 201, job.getStatus());
+    }
+
+    // Finished jobs and their logs stay in memory until they are deleted, so only keep the most recent ones
+    private void prune() {
+        List<Job> finished = jobs.values().stream().filter(Job::isDone).collect(Collectors.toList());
+        for (int x = 0; x < finished.size() - KEEP_FINISHED; x++)
+            jobs.remove(finished.get(x).id);
+    }
+
+    private void streamLog(HttpExchange exchange, Job job) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        int next = 0;
+        while (true) {
+            List<String> lines;
+            boolean done;
+            synchronized (job.lines) {
+                while (next >= job.lines.size() && !job.isDone()) {
+                    try {
+                        job.lines.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                lines = new ArrayList<>(job.lines.subList(next, job.lines.size()));
+                next = job.lines.size();
+                done = job.isDone();
+            }
+            for (String line : lines)
+                out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+            if (done) {
+                out.write(("Job " + job.state + "\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                return;
+            }
+            out.flush();
+        }
+    }
+
+    private static Map<String, Object> error(String message) {
+        Map<String, Object> ret = new LinkedHashMap<>();
+        ret.put("error", message);
+        return ret;
+    }
+
+    private static void respond(HttpExchange exchange, int code, Object body) throws IOException {
+        byte[] data = Util.GSON.toJson(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(code, data.length);
+        exchange.getResponseBody().write(data);
+    }
+
+    private static class JobSpec {
+        @Nullable
+        private String installer;
+        @Nullable
+        private String action;
+        @Nullable
+        private List<String> targets;
+        private boolean serverStarterJar;
+    }
+
+    /**
+     * Keeps the messages of a job for its log, and passes everything on to the monitor of the daemon.
+     */
+    private class Job extends DelegatingProgressCallback {
+        private final int id;
+        private final JobSpec spec;
+        private final Actions action;
+        private final List<String> lines = new ArrayList<>();
+        private volatile String state = "queued";
+        @Nullable
+        private volatile String error;
+        @Nullable
+        private volatile String step;
+        @Nullable
+        private volatile Future<?> future;
+
+        private Job(int id, JobSpec spec, Actions action) {
+            super(defaults.getMonitor());
+            this.id = id;
+            this.spec = spec;
+            this.action = action;
+        }
+
+        private void run() {
+            state = "running";
+            String result;
+            File installer = spec.installer == null ? defaults.getInstaller() : new File(spec.installer);
+            boolean own = installer == null || installer.getAbsoluteFile().equals(InstallerArchive.current().getFile());
+            try (InstallerArchive archive = own ? null : InstallerArchive.open(installer)) {
+                InstallRequest request = defaults.copy()
+                        .action(action)
+                        .targets(spec.targets.stream().map(File::new).collect(Collectors.toList()))
+                        .serverStarterJar(spec.serverStarterJar)
+                        .monitor(this)
+                        .headless(true);
+                if (archive != null)
+                    request.archive(archive).installer(installer);
+                result = engine.install(request) ? "succeeded" : "failed";
+            } catch (ActionCanceledException e) {
+                result = "canceled";
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+                error = e.toString();
+                message("Job failed: " + e);
+                result = "failed";
+            }
+            synchronized (lines) {
+                state = result;
+                lines.notifyAll();
+            }
+            log.message("[job " + id + "] " + result);
+        }
+
+        private boolean isDone() {
+            return !state.equals("queued") && !state.equals("running");
+        }
+
+        private void cancel() {
+            if (future != null && future.cancel(true)) {
+                synchronized (lines) {
+                    if (state.equals("queued"))
+                        state = "canceled";
+                    lines.notifyAll();
+                }
+            }
+        }
+
+        private Map<String, Object> getStatus() {
+            Map<String, Object> ret = new LinkedHashMap<>();
+            ret.put("id", id);
+            ret.put("action", action.name().toLowerCase(Locale.ROOT));
+            ret.put("targets", spec.targets);
+            ret.put("state", state);
+            if (step != null)
+                ret.put("step", step);
+            if (error != null)
+                ret.put("error", error);
+            return ret;
+        }
+
+        @Override
+        public void start(String label) {
+            message(label);
+        }
+
+        @Override
+        public void stage(String message, boolean withProgress) {
+            message(message);
+        }
+
+        @Override
+        public void stage(String message) {
+            message(message);
+        }
+
+        @Override
+        public void message(String message) {
+            message(message, MessagePriority.NORMAL);
+        }
+
+        @Override
+        public void message(String message, MessagePriority priority) {
+            synchronized (lines) {
+                lines.add(message);
+                lines.notifyAll();
+            }
+            delegate.message("[job " + id + "] " + message, priority);
+        }
+
+        @Override
+        public void setCurrentStep(String step) {
+            message(step, MessagePriority.HIGH);
+            this.step = step;
+        }
+
+        @Override
+        public String getCurrentStep() {
+            return step;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package net.minecraftforge.installer;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import net.minecraftforge.installer.actions.Action;
+import net.minecraftforge.installer.actions.ActionCanceledException;
+import net.minecraftforge.installer.actions.Actions;
+import net.minecraftforge.installer.actions.ServerInstall;
+import net.minecraftforge.installer.json.InstallV1;
+import net.minecraftforge.installer.json.Util;
+
+/**
+ * Runs installs described by {@link InstallRequest}s, for embedding the installer into other programs.
+ * <p>
+ * All configuration is carried by the request, so any number of installs may run at once from different threads.
+ * Installs into the same directories still wait for each other through the file locks of the downloads.
+ */
+public class InstallerEngine {
+    /**
+     * Runs the install on the calling thread.
+     *
+     * @return whether the install succeeded, errors are reported to the monitor of the request
+     */
+    public boolean install(InstallRequest request) throws ActionCanceledException {
+        Actions type = request.getAction();
+        List<File> targets = request.getTargets();
+        if (type == null || targets.isEmpty())
+            throw new IllegalArgumentException("The install request needs an action and a target");
+        if (targets.size() > 1 && type != Actions.SERVER)
+            throw new IllegalArgumentException("Only servers can be installed into several targets at once");
+
+        try (InstallRequest.Binding binding = request.bind()) {
+            InstallV1 profile = Util.loadInstallProfile(request.getArchive());
+            Action action = type.getAction(profile, request.getMonitor());
+            action.shareLibrariesFrom(request.getSharedLibraries());
+            return request.getMonitor().phase("install", () -> {
+                if (targets.size() > 1)
+                    return ((ServerInstall) action).run(targets, request.getOptionals(), request.getInstaller());
+                return action.run(targets.get(0), request.getOptionals(), request.getInstaller());
+            });
+        }
+    }
+
+    /**
+     * Runs the install on the executor.
+     *
+     * @return the result of the install, completed exceptionally with an {@link ActionCanceledException} if it was
+     *         canceled
+     */
+    public CompletableFuture<Boolean> submit(InstallRequest request, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return install(request);
+            } catch (ActionCanceledException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package net.minecraftforge.installer;
+
+import java.io.File;
+import java.nio.file.Path;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The Flight Recorder events, only loaded by {@link FlightRecorderEvents} when the JVM has Flight Recorder.
+ */
+class JfrEvents implements FlightRecorderEvents.Factory {
+    JfrEvents() {
+        FlightRecorder.register(DownloadEvent.class);
+        FlightRecorder.register(HashEvent.class);
+        FlightRecorder.register(ProcessorEvent.class);
+        FlightRecorder.register(LibrariesEvent.class);
+    }
+
+    @Override
+    public FlightRecorderEvents.Span download(String url, File target) {
+        DownloadEvent event = new DownloadEvent();
+        if (!event.isEnabled())
+            return FlightRecorderEvents.Span.NOOP;
+        event.url = url;
+        event.file = target.getAbsolutePath();
+        event.begin();
+        return new FlightRecorderEvents.Span() {
+            @Override
+            public void bytes(long bytes) {
+                event.bytes = bytes;
+            }
+
+            @Override
+            public void source(String source) {
+                event.source = source;
+            }
+
+            @Override
+            public void success(boolean success) {
+                event.success = success;
+            }
+
+            @Override
+            public void close() {
+                event.commit();
+            }
+        };
+    }
+
+    @Override
+    public FlightRecorderEvents.Span hash(Path file, String algorithms) {
+        HashEvent event = new HashEvent();
+        if (!event.isEnabled())
+            return FlightRecorderEvents.Span.NOOP;
+        event.file = file.toAbsolutePath().toString();
+        event.algorithms = algorithms;
+        event.begin();
+        return new FlightRecorderEvents.Span() {
+            @Override
+            public void bytes(long bytes) {
+                event.bytes = bytes;
+            }
+
+            @Override
+            public void close() {
+                event.commit();
+            }
+        };
+    }
+
+    @Override
+    public FlightRecorderEvents.Span processor(String processor, @Nullable String task) {
+        ProcessorEvent event = new ProcessorEvent();
+        if (!event.isEnabled())
+            return FlightRecorderEvents.Span.NOOP;
+        event.processor = processor;
+        event.task = task;
+        event.begin();
+        return new FlightRecorderEvents.Span() {
+            @Override
+            public void success(boolean success) {
+                event.success = success;
+            }
+
+            @Override
+            public void close() {
+                event.commit();
+            }
+        };
+    }
+
+    @Override
+    public FlightRecorderEvents.Span libraries(int count) {
+        LibrariesEvent event = new LibrariesEvent();
+        if (!event.isEnabled())
+            return FlightRecorderEvents.Span.NOOP;
+        event.count = count;
+        event.begin();
+        return new FlightRecorderEvents.Span() {
+            @Override
+            public void success(boolean success) {
+                event.success = success;
+            }
+
+            @Override
+            public void close() {
+                event.commit();
+            }
+        };
+    }
+
+    @Name("net.neoforged.installer.Download")
+    @Label("Download")
+    @Category({ "Installer" })
+    @StackTrace(false)
+    static class DownloadEvent extends Event {
+        @Label("URL")
+        String url;
+        @Label("File")
+        String file;
+        @Label("Source")
+        String source;
+        @Label("Size")
+        @DataAmount
+        long bytes;
+        @Label("Success")
+        boolean success;
+    }
+
+    @Name("net.neoforged.installer.Hash")
+    @Label("File Hash")
+    @Category({ "Installer" })
+    @StackTrace(false)
+    static class HashEvent extends Event {
+        @Label("File")
+        String file;
+        @Label("Algorithms")
+        String algorithms;
+        @Label("Size")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("net.neoforged.installer.Processor")
+    @Label("Processor")
+    @Category({ "Installer" })
+    @StackTrace(false)
+    static class ProcessorEvent extends Event {
+        @Label("Processor")
+        String processor;
+        @Label("Task")
+        String task;
+        @Label("Success")
+        boolean success;
+    }
+
+    @Name("net.neoforged.installer.Libraries")
+    @Label("Library Downloads")
+    @Category({ "Installer" })
+    @StackTrace(false)
+    static class LibrariesEvent extends Event {
+        @Label("Libraries")
+        int count;
+        @Label("Success")
+        boolean success;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package net.minecraftforge.installer;
+
+import com.google.gson.JsonObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Named counters and timers, safe to update from any thread. Names are dotted, like {@code download.network.bytes},
+ * and are kept in order so related metrics are listed together.
+ */
+public class Metrics {
+    private final Map<String, AtomicLong> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, Timer> timers = new ConcurrentSkipListMap<>();
+
+    public void count(String name, long delta) {
+        counters.computeIfAbsent(name, k -> new AtomicLong()).addAndGet(delta);
+    }
+
+    public void time(String name, long nanos) {
+        timers.computeIfAbsent(name, k -> new Timer()).record(nanos);
+    }
+
+    public long getCount(String name) {
+        AtomicLong counter = counters.get(name);
+        return counter == null ? 0 : counter.get();
+    }
+
+    public Timer getTimer(String name) {
+        Timer timer = timers.get(name);
+        return timer == null ? new Timer() : timer;
+    }
+
+    public boolean isEmpty() {
+        return counters.isEmpty() && timers.isEmpty();
+    }
+
+    /**
+     * @return one line per metric, timers first, aligned for the log
+     */
+    public List<String> summary() {
+        int width = 0;
+        for (String name : timers.keySet())
+            width = Math.max(width, name.length());
+        for (String name : counters.keySet())
+            width = Math.max(width, name.length());
+
+        List<String> ret = new ArrayList<>();
+        for (Map.Entry<String, Timer> e : timers.entrySet()) {
+            Timer timer = e.getValue();
+            ret.add(String.format("%-" + width + "s %5d x %10.1f ms total %10.1f ms max", e.getKey(), timer.getCount(), timer.getTotalNanos() / 1e6, timer.getMaxNanos() / 1e6));
+        }
+        for (Map.Entry<String, AtomicLong> e : counters.entrySet())
+            ret.add(String.format("%-" + width + "s %d", e.getKey(), e.getValue().get()));
+        return ret;
+    }
+
+    public JsonObject toJson() {
+        JsonObject ret = new JsonObject();
+        JsonObject counterJson = new JsonObject();
+        for (Map.Entry<String, AtomicLong> e : counters.entrySet())
+            counterJson.addProperty(e.getKey(), e.getValue().get());
+        JsonObject timerJson = new JsonObject();
+        for (Map.Entry<String, Timer> e : timers.entrySet()) {
+            JsonObject timer = new JsonObject();
+            timer.addProperty("count", e.getValue().getCount());
+            timer.addProperty("total_ms", e.getValue().getTotalNanos() / 1e6);
+            timer.addProperty("max_ms", e.getValue().getMaxNanos() / 1e6);
+            timerJson.add(e.getKey(), timer);
+        }
+        ret.add("counters", counterJson);
+        ret.add("timers", timerJson);
+        return ret;
+    }
+
+    public static class Timer {
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+
+        synchronized void record(long nanos) {
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        public synchronized long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public synchronized long getMaxNanos() {
+            return maxNanos;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package net.minecraftforge.installer;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Token bucket limiting how fast all downloads together may read from the network.
+ * <p>
+ * The bucket refills at the configured rate and holds at most a quarter second worth of bytes, so short bursts don't
+ * add up to a spike. Readers take tokens for what they read and sleep off any debt.
+ * <p>
+ * With a state file, the bucket is shared by every installer using the same file: the bucket lives in the file and
+ * is updated under a file lock. To keep locking rare, each process takes tokens from it in leases of at least 1/20th
+ * of a second worth of bytes. All processes sharing a file should use the same rate.
+ */
+public class RateLimiter {
+    private static final int STATE_SIZE = 16;
+
+    private final long rate;
+    private final double capacity;
+    @Nullable
+    private final Path state;
+    private double tokens;
+    private long last = System.nanoTime();
+    private long allowance = 0;
+
+    /**
+     * @param bytesPerSecond the rate to limit to
+     * @param state          a file to share the limit with other processes through, or {@code null}
+     */
+    public RateLimiter(long bytesPerSecond, @Nullable Path state) {
+        this.rate = Math.max(1, bytesPerSecond);
+        this.capacity = Math.max(this.rate / 4.0, 64 * 1024);
+        this.state = state;
+        this.tokens = capacity;
+    }
+
+    /**
+     * Wraps a network stream so reading from it is limited by the limiter of the current install, if there is one.
+     */
+    public static InputStream limit(InputStream in) {
+        RateLimiter limiter = InstallRequest.current().getRateLimiter();
+        return limiter == null ? in : limiter.wrap(in);
+    }
+
+    /**
+     * Parses a rate like {@code 500k}, {@code 20M} or {@code 1g} in bytes per second. A plain number is in bytes.
+     */
+    public static long parseRate(String value) {
+        String lower = value.trim().toLowerCase(Locale.ROOT);
+        long unit = 1;
+        if (lower.endsWith("k"))
+            unit = 1024;
+        else if (lower.endsWith("m"))
+            unit = 1024 * 1024;
+        else if (lower.endsWith("g"))
+            unit = 1024 * 1024 * 1024;
+        if (unit != 1)
+            lower = lower.substring(0, lower.length() - 1);
+        return (long) (Double.parseDouble(lower) * unit);
+    }
+
+    public InputStream wrap(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = in.read();
+                if (b != -1)
+                    acquire(1);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = in.read(b, off, len);
+                if (read > 0)
+                    acquire(read);
+                return read;
+            }
+        };
+    }
+
+    /**
+     * Takes tokens for bytes that were read, sleeping until the bucket is out of debt.
+     */
+    public void acquire(long bytes) throws IOException {
+        double wait;
+        if (state == null) {
+            synchronized (this) {
+                wait = take(bytes);
+            }
+        } else {
+            long need;
+            synchronized (this) {
+                if (allowance >= bytes) {
+                    allowance -= bytes;
+                    return;
+                }
+                need = bytes - allowance;
+                allowance = 0;
+            }
+            long lease = Math.max(need, rate / 20);
+            wait = takeShared(lease);
+            synchronized (this) {
+                allowance += lease - need;
+            }
+        }
+
+        if (wait > 0) {
+            try {
+                Thread.sleep((long) Math.ceil(wait * 1000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttled");
+            }
+        }
+    }
+
+    // Returns the seconds to wait until the bucket is back out of debt
+    private double take(long bytes) {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - last) / 1e9 * rate);
+        last = now;
+        tokens -= bytes;
+        return tokens < 0 ? -tokens / rate : 0;
+    }
+
+    // The same as take, on the bucket stored in the state file. Wall clock time, since nanoTime differs per process.
+    // Synchronized as file locks are held by the whole process, two threads locking at once would fail.
+    private synchronized double takeShared(long bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(state, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                FileLock lock = channel.lock()) {
+            ByteBuffer buf = ByteBuffer.allocate(STATE_SIZE);
+            while (buf.hasRemaining() && channel.read(buf, buf.position()) > 0) {}
+            buf.flip();
+
+            long now = System.currentTimeMillis();
+            double shared = capacity;
+            if (buf.remaining() == STATE_SIZE) {
+                long then = buf.getLong();
+                shared = Math.min(capacity, buf.getDouble() + Math.max(0, now - then) / 1000.0 * rate);
+            }
+            shared -= bytes;
+
+            buf.clear();
+            buf.putLong(now).putDouble(shared).flip();
+            while (buf.hasRemaining())
+                channel.write(buf, buf.position());
+            return shared < 0 ? -shared / rate : 0;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package net.minecraftforge.installer;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import net.minecraftforge.installer.actions.ProgressCallback;
+
+/**
+ * Downloads a large file over several HTTP range requests at once.
+ * <p>
+ * A single connection is limited by its round trip time, so on distant mirrors a few connections side by side get
+ * much closer to the available bandwidth. The target is allocated at its full size up front and every segment writes
+ * its own part of it at fixed positions; the caller checks the whole file with a single hash pass afterwards.
+ */
+public class SegmentedDownload {
+    private static final int MAX_SEGMENTS = 4;
+    private static final long MIN_SEGMENT = 4L * 1024 * 1024;
+
+    /**
+     * @param connection an open connection to the file, whose response has not been read yet
+     * @param length     the size of the file, or {@code -1} if unknown
+     * @return whether the file should be downloaded in segments
+     * @see InstallRequest#segmentThreshold
+     */
+    public static boolean supports(URLConnection connection, long length) {
+        long threshold = InstallRequest.current().getSegmentThreshold();
+        if (threshold <= 0 || length < threshold || !(connection instanceof HttpURLConnection))
+            return false;
+        try {
+            return ((HttpURLConnection) connection).getResponseCode() == HttpURLConnection.HTTP_OK &&
+                    "bytes".equalsIgnoreCase(connection.getHeaderField("Accept-Ranges"));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Downloads the file into {@code target}. The first segment is read from {@code connection}, the others are
+     * requested as ranges of {@code url}.
+     */
+    public static void download(URLConnection connection, String url, long length, Path target, ProgressCallback monitor) throws IOException {
+        int count = (int) Math.max(1, Math.min(MAX_SEGMENTS, length / MIN_SEGMENT));
+        long segment = (length + count - 1) / count;
+
+        try (RandomAccessFile file = new RandomAccessFile(target.toFile(), "rw")) {
+            file.setLength(length);
+        }
+
+        monitor.message("\tDownloading in " + count + " segments");
+        monitor.getStepProgress().setMaxProgress((int) Math.min(Integer.MAX_VALUE, length));
+        AtomicLong progress = new AtomicLong();
+        AtomicBoolean failed = new AtomicBoolean();
+
+        InstallRequest request = InstallRequest.current();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, count - 1), r -> {
+            Thread thread = new Thread(request.wrap(r), "Installer-Segment");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE)) {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int x = 1; x < count; x++) {
+                long start = x * segment;
+                long end = Math.min(length, start + segment);
+                futures.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        URLConnection range = DownloadUtils.getConnection(url, Collections.singletonMap("Range", "bytes=" + start + "-" + (end - 1)));
+                        if (range == null)
+                            throw new IOException("Could not connect to " + url);
+                        if (!(range instanceof HttpURLConnection) || ((HttpURLConnection) range).getResponseCode() != HttpURLConnection.HTTP_PARTIAL)
+                            throw new IOException("Server did not honor range request for " + url);
+                        try (InputStream stream = RateLimiter.limit(range.getInputStream())) {
+                            write(stream, out, start, end, progress, failed, monitor);
+                        }
+                    } catch (IOException e) {
+                        failed.set(true);
+                        throw new CompletionException(e);
+                    }
+                }, pool));
+            }
+
+            try (InputStream stream = RateLimiter.limit(connection.getInputStream())) {
+                write(stream, out, 0, Math.min(length, segment), progress, failed, monitor);
+            } catch (IOException e) {
+                failed.set(true);
+                throw e;
+            } finally {
+                // The rest of the full response isn't needed
+                ((HttpURLConnection) connection).disconnect();
+            }
+
+            for (CompletableFuture<Void> future : futures) {
+                try {
+                    future.join();
+                } catch (CompletionException e) {
+                    throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void write(InputStream stream, FileChannel out, long position, long end, AtomicLong progress, AtomicBoolean failed, ProgressCallback monitor) throws IOException {
+        byte[] buf = new byte[64 * 1024];
+        while (position < end) {
+            if (failed.get())
+                throw new IOException("Another segment failed");
+            int read = stream.read(buf, 0, (int) Math.min(buf.length, end - position));
+            if (read == -1)
+                throw new EOFException("Segment ended " + (end - position) + " bytes early");
+            ByteBuffer wrapped = ByteBuffer.wrap(buf, 0, read);
+            while (wrapped.hasRemaining())
+                position += out.write(wrapped, position);
+            monitor.getStepProgress().progress((int) Math.min(Integer.MAX_VALUE, progress.addAndGet(read)));
+        }
+    }
+}
@@ -25,11 +25,16 @@ import java.io.OutputStream;
 import java.io.PrintStream;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.jar.JarFile;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -39,9 +44,14 @@ import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 import joptsimple.OptionSpec;
 import net.minecraftforge.installer.actions.Actions;
+import net.minecraftforge.installer.actions.DigestsCallback;
+import net.minecraftforge.installer.actions.EventStreamCallback;
 import net.minecraftforge.installer.actions.FatInstallerAction;
+import net.minecraftforge.installer.actions.MetricsCallback;
+import net.minecraftforge.installer.actions.MultiServerInstall;
 import net.minecraftforge.installer.actions.ProgressCallback;
-import net.minecraftforge.installer.actions.ServerInstall;
+import net.minecraftforge.installer.actions.ServerTemplate;
+import net.minecraftforge.installer.actions.TraceCallback;
 import net.minecraftforge.installer.json.InstallV1;
 import net.minecraftforge.installer.json.Util;
 import net.minecraftforge.installer.ui.InstallerPanel;
@@ -50,10 +60,6 @@ import net.neoforged.cliutils.progress.ProgressManager;
 import net.neoforged.cliutils.progress.ProgressReporter;
 
 public class SimpleInstaller {
-    public static boolean headless = false;
-    public static boolean debug = false;
-    public static URL mirror = null;
-
     public static void main(String[] args) throws IOException, URISyntaxException {
         ProgressCallback monitor;
         try {
@@ -84,7 +90,15 @@ public class SimpleInstaller {
 
         OptionParser parser = new OptionParser();
         OptionSpec<File> clientInstallOption = parser.acceptsAll(Arrays.asList("installClient", "install-client"), "Install a client to the specified directory, defaulting to the MC installation directory").withOptionalArg().ofType(File.class).defaultsTo(getMCDir());
-        OptionSpec<File> serverInstallOption = parser.acceptsAll(Arrays.asList("installServer", "install-server"), "Install a server to the current directory").withOptionalArg().ofType(File.class).defaultsTo(new File("."));
+        OptionSpec<File> serverInstallOption = parser.acceptsAll(Arrays.asList("installServer", "install-server"), "Install a server to the current directory, further directories may follow to install the same server to all of them").withOptionalArg().ofType(File.class).defaultsTo(new File("."));
+        OptionSpec<File> serverTargetsOption = parser.accepts("targets-file", "Install a server to every directory listed in this file, one per line").withRequiredArg().ofType(File.class);
+        OptionSpec<File> extraTargetsOption = parser.nonOptions("Additional directories to install the server to, or to clone the template into").ofType(File.class);
+
+        OptionSpec<String> installFromOption = parser.accepts("install-from", "Also install a server from another installer jar, given as <installer>=<directory>. Can be repeated, the installs share downloads and processor outputs").withRequiredArg().describedAs("installer=directory");
+        OptionSpec<Void> serverTemplateOption = parser.accepts("template", "Seal the installed server with a manifest of its files, so new servers can be cloned from it with --clone-from");
+        OptionSpec<Integer> daemonOption = parser.accepts("daemon", "Keep running and accept install jobs over a local HTTP API on this port, see InstallerDaemon").withRequiredArg().ofType(Integer.class);
+        OptionSpec<File> daemonTokenOption = parser.accepts("daemon-token-file", "Write the token that requests to the daemon must carry to this file, instead of printing it").availableIf(daemonOption).withRequiredArg().ofType(File.class);
+        OptionSpec<File> cloneFromOption = parser.accepts("clone-from", "Clone a server sealed with --template into the directories that follow, without installing").withRequiredArg().ofType(File.class);
 
         OptionSpec<Void> serverStarterOption = parser.acceptsAll(Arrays.asList("server-starter", "server.jar", "server-jar"), "Download the server starter jar for arg-free executable launches");
 
@@ -98,16 +112,90 @@ public class SimpleInstaller {
         OptionSpec<Void> offlineOption = parser.accepts("offline", "Don't attempt any network calls");
         OptionSpec<Void> debugOption = parser.accepts("debug", "Run in debug mode -- don't delete any files");
         OptionSpec<URL> mirrorOption = parser.accepts("mirror", "Use a specific mirror URL").withRequiredArg().ofType(URL.class);
+        OptionSpec<File> workDirOption = parser.accepts("work-dir", "Directory for the temporary files of processors, by default /dev/shm is used when there is enough free memory").withRequiredArg().ofType(File.class);
+        OptionSpec<Void> pipelinedOption = parser.accepts("pipelined", "Start each processor as soon as the libraries it needs are downloaded, instead of waiting for all of them");
+        OptionSpec<Integer> segmentThresholdOption = parser.accepts("segment-threshold", "Download files larger than this many megabytes over several connections, 0 to disable").withRequiredArg().ofType(Integer.class);
+        OptionSpec<Integer> maxDownloadsOption = parser.accepts("max-downloads", "The most downloads to run at once, fewer are used while that doesn't lower throughput").withRequiredArg().ofType(Integer.class);
+        OptionSpec<Integer> maxDownloadsPerHostOption = parser.accepts("max-downloads-per-host", "The most downloads to run at once from a single host").withRequiredArg().ofType(Integer.class);
+        OptionSpec<String> maxBandwidthOption = parser.accepts("max-bandwidth", "Limit all downloads together to this many bytes per second, with an optional k, M or G suffix").withRequiredArg().describedAs("rate");
+        OptionSpec<File> bandwidthStateOption = parser.accepts("bandwidth-state", "Share the --max-bandwidth limit with other installers on this host that use the same file").availableIf(maxBandwidthOption).withRequiredArg().ofType(File.class);
+        OptionSpec<String> eventsOutOption = parser.accepts("events-out", "Write the progress of the install as newline delimited JSON events to this file, or file descriptor number").withRequiredArg().describedAs("file|fd");
+        OptionSpec<File> metricsOutOption = parser.accepts("metrics-out", "Write the timings of the install as a JSON report to this file").withRequiredArg().ofType(File.class);
+        OptionSpec<File> traceOutOption = parser.accepts("trace-out", "Write a timeline of the install in the Chrome trace format to this file, for about:tracing or Perfetto").withRequiredArg().ofType(File.class);
+        OptionSpec<File> digestsOutOption = parser.accepts("digests-out", "Write the SHA-1 and SHA-256 of every downloaded library and processor output as JSON to this file").withRequiredArg().ofType(File.class);
         OptionSet optionSet = parser.parse(args);
 
         if (optionSet.has(helpOption)) {
             parser.printHelpOn(System.out);
             return;
         }
+        if (!optionSet.valuesOf(extraTargetsOption).isEmpty() && !optionSet.has(serverInstallOption) && !optionSet.has(serverTargetsOption) && !optionSet.has(cloneFromOption)) {
+            monitor.stage("Unexpected arguments " + optionSet.valuesOf(extraTargetsOption) + ", directories may only follow --install-server or --clone-from");
+            System.exit(1);
+        }
 
-        debug = optionSet.has(debugOption);
+        InstallRequest request = new InstallRequest()
+                .monitor(monitor)
+                .installer(installer)
+                .debug(optionSet.has(debugOption))
+                .pipelined(optionSet.has(pipelinedOption));
+        if (optionSet.has(eventsOutOption)) {
+            request.monitor(new EventStreamCallback(monitor, EventStreamCallback.open(optionSet.valueOf(eventsOutOption))));
+        }
+        DigestsCallback digests = optionSet.has(digestsOutOption) ? new DigestsCallback(request.getMonitor()) : null;
+        if (digests != null) {
+            request.monitor(digests).digest(HashFunction.SHA256);
+        }
+        TraceCallback trace = optionSet.has(traceOutOption) ? new TraceCallback(request.getMonitor()) : null;
+        if (trace != null) {
+            request.monitor(trace);
+        }
+        MetricsCallback metrics = new MetricsCallback(request.getMonitor());
+        request.monitor(metrics);
+        // Also reports installs that fail and exit early
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            metrics.printSummary();
+            if (optionSet.has(metricsOutOption)) {
+                try {
+                    metrics.writeReport(optionSet.valueOf(metricsOutOption));
+                } catch (IOException e) {
+                    metrics.message("Failed to write the metrics report: " + e);
+                }
+            }
+            if (trace != null) {
+                try {
+                    trace.write(optionSet.valueOf(traceOutOption));
+                } catch (IOException e) {
+                    metrics.message("Failed to write the trace: " + e);
+                }
+            }
+            if (digests != null) {
+                try {
+                    digests.write(optionSet.valueOf(digestsOutOption));
+                } catch (IOException e) {
+                    metrics.message("Failed to write the digests: " + e);
+                }
+            }
+        }));
         if (optionSet.has(mirrorOption)) {
-            mirror = optionSet.valueOf(mirrorOption);
+            request.mirror(optionSet.valueOf(mirrorOption));
+        }
+        if (optionSet.has(workDirOption)) {
+            request.workDir(optionSet.valueOf(workDirOption));
+        }
+        if (optionSet.has(segmentThresholdOption)) {
+            request.segmentThreshold(optionSet.valueOf(segmentThresholdOption) * 1024L * 1024L);
+        }
+        if (optionSet.has(maxBandwidthOption)) {
+            long rate = RateLimiter.parseRate(optionSet.valueOf(maxBandwidthOption));
+            request.rateLimiter(new RateLimiter(rate, optionSet.has(bandwidthStateOption) ? optionSet.valueOf(bandwidthStateOption).toPath() : null));
+            monitor.message("Limiting downloads to " + rate / 1024 + " KB/s");
+        }
+        if (optionSet.has(maxDownloadsOption)) {
+            request.maxDownloads(optionSet.valueOf(maxDownloadsOption));
+        }
+        if (optionSet.has(maxDownloadsPerHostOption)) {
+            request.maxDownloadsPerHost(optionSet.valueOf(maxDownloadsPerHostOption));
         }
 
         boolean isOffline = optionSet.has(offlineOption);
@@ -117,7 +205,7 @@ public class SimpleInstaller {
             }
         }
         if (isOffline) {
-            DownloadUtils.OFFLINE_MODE = true;
+            request.offline(true);
             monitor.message("ENABLING OFFLINE MODE");
         } else {
             for (String host : new String[] {
@@ -132,46 +220,137 @@ public class SimpleInstaller {
             FixSSL.fixup(monitor);
         }
 
+        if (optionSet.has(daemonOption)) {
+            InstallerDaemon daemon = new InstallerDaemon(request, monitor, Runtime.getRuntime().availableProcessors() / 2);
+            daemon.start(optionSet.valueOf(daemonOption));
+            if (optionSet.has(daemonTokenOption)) {
+                daemon.writeToken(optionSet.valueOf(daemonTokenOption).toPath());
+                monitor.message("Wrote the daemon token to " + optionSet.valueOf(daemonTokenOption));
+            } else {
+                monitor.message("Daemon token: " + daemon.getToken());
+            }
+            // The server threads keep the JVM running until it is stopped
+            Runtime.getRuntime().addShutdownHook(new Thread(daemon::stop));
+            return;
+        }
+
+        List<File> serverTargets = new ArrayList<>();
+        if (optionSet.hasArgument(serverInstallOption))
+            serverTargets.addAll(optionSet.valuesOf(serverInstallOption));
+        serverTargets.addAll(optionSet.valuesOf(extraTargetsOption));
+        if (optionSet.has(serverTargetsOption)) {
+            for (String line : Files.readAllLines(optionSet.valueOf(serverTargetsOption).toPath(), StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#"))
+                    serverTargets.add(new File(line));
+            }
+        }
+        // Only a bare --install-server falls back to the current directory
+        if (optionSet.has(serverInstallOption) && serverTargets.isEmpty())
+            serverTargets.add(optionSet.valueOf(serverInstallOption));
+
+        if (optionSet.has(cloneFromOption)) {
+            File template = optionSet.valueOf(cloneFromOption);
+            if (serverTargets.isEmpty()) {
+                monitor.stage("No directories to clone the server template into were given");
+                System.exit(1);
+            }
+            try {
+                for (File dir : serverTargets) {
+                    monitor.stage("Cloning server template into " + dir);
+                    ServerTemplate.clone(template.toPath(), dir.toPath(), monitor);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                monitor.stage("Cloning the server template failed: " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+
+        if (optionSet.has(installFromOption)) {
+            Map<File, File> installs = new LinkedHashMap<>();
+            if (optionSet.has(serverInstallOption) || optionSet.has(serverTargetsOption)) {
+                for (File dir : serverTargets)
+                    installs.put(dir, installer);
+            }
+            for (String value : optionSet.valuesOf(installFromOption)) {
+                int split = value.lastIndexOf('=');
+                if (split <= 0 || split == value.length() - 1) {
+                    monitor.stage("Invalid --install-from " + value + ", expected <installer>=<directory>");
+                    System.exit(1);
+                }
+                installs.put(new File(value.substring(split + 1)), new File(value.substring(0, split)));
+            }
+
+            request.serverStarterJar(optionSet.has(serverStarterOption));
+            try {
+                if (!MultiServerInstall.run(request, installs)) {
+                    monitor.stage("There was an error during installation");
+                    System.exit(1);
+                }
+                if (optionSet.has(serverTemplateOption)) {
+                    for (File dir : installs.keySet())
+                        monitor.message("Sealed server template " + dir + " with " + ServerTemplate.seal(dir.toPath()) + " files");
+                }
+                monitor.stage("Installed " + installs.size() + " servers");
+            } catch (Throwable e) {
+                monitor.stage("A problem installing was detected, install cannot continue");
+                System.exit(1);
+            }
+            return;
+        }
+
         Actions action = null;
-        File target = null;
-        if (optionSet.has(serverInstallOption)) {
+        if (optionSet.has(serverInstallOption) || optionSet.has(serverTargetsOption)) {
             action = Actions.SERVER;
-            target = optionSet.valueOf(serverInstallOption);
-            ServerInstall.serverStarterJar = optionSet.has(serverStarterOption);
+            if (serverTargets.isEmpty()) {
+                monitor.stage("No server directories were given");
+                System.exit(1);
+            }
+            request.targets(serverTargets);
+            request.serverStarterJar(optionSet.has(serverStarterOption));
         } else if (optionSet.has(clientInstallOption)) {
             action = Actions.CLIENT;
-            target = optionSet.valueOf(clientInstallOption);
+            request.target(optionSet.valueOf(clientInstallOption));
         } else if (optionSet.has(fatInstallerOption) || optionSet.has(fatOffline)) {
             action = Actions.FAT_INSTALLER;
-            target = optionSet.valueOf(fatInstallerOption);
+            request.target(optionSet.valueOf(fatInstallerOption));
 
             if (optionSet.has(fatIncludeMC) || optionSet.has(fatOffline)) {
-                FatInstallerAction.OPTIONS.add(FatInstallerAction.Options.MC_JAR);
+                request.fatOption(FatInstallerAction.Options.MC_JAR);
             }
             if (optionSet.has(fatIncludeMCLibs) || optionSet.has(fatOffline)) {
-                FatInstallerAction.OPTIONS.add(FatInstallerAction.Options.MC_LIBS);
+                request.fatOption(FatInstallerAction.Options.MC_LIBS);
             }
             if (optionSet.has(fatIncludeInstallerLibs) || optionSet.has(fatOffline)) {
-                FatInstallerAction.OPTIONS.add(FatInstallerAction.Options.INSTALLER_LIBS);
+                request.fatOption(FatInstallerAction.Options.INSTALLER_LIBS);
             }
         }
 
         if (action == null && GraphicsEnvironment.isHeadless()) {
             monitor.message("No action was specified but headless environment was detected... Installing server");
             action = Actions.SERVER;
-            target = optionSet.valueOf(serverInstallOption);
-            ServerInstall.serverStarterJar = true;
+            request.target(optionSet.valueOf(serverInstallOption));
+            request.serverStarterJar(true);
         }
 
         if (action != null) {
             try {
-                SimpleInstaller.headless = true;
-                monitor.message("Target Directory: " + target);
-                InstallV1 install = Util.loadInstallProfile();
-                if (!action.getAction(install, monitor).run(target, a -> true, installer)) {
+                request.action(action);
+                List<File> targets = request.getTargets();
+                if (targets.size() > 1)
+                    monitor.message("Target Directories: " + targets);
+                else
+                    monitor.message("Target Directory: " + targets.get(0));
+                if (!new InstallerEngine().install(request)) {
                     monitor.stage("There was an error during installation");
                     System.exit(1);
                 } else {
+                    if (action == Actions.SERVER && optionSet.has(serverTemplateOption)) {
+                        for (File dir : targets)
+                            monitor.message("Sealed server template " + dir + " with " + ServerTemplate.seal(dir.toPath()) + " files");
+                    }
                     monitor.message(action.getSuccess());
                     monitor.stage("You can delete this installer file now if you wish");
                 }
@@ -179,8 +358,11 @@ public class SimpleInstaller {
                 monitor.stage("A problem installing was detected, install cannot continue");
                 System.exit(1);
             }
-        } else
-            launchGui(monitor, installer);
+        } else {
+            try (InstallRequest.Binding binding = request.headless(false).bind()) {
+                launchGui(monitor, installer);
+            }
+        }
     }
 
     public static File getMCDir() {
@@ -16,27 +16,36 @@
 package net.minecraftforge.installer.actions;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 import javax.swing.JOptionPane;
-import net.minecraftforge.installer.DownloadUtils;
-import net.minecraftforge.installer.SimpleInstaller;
+import net.minecraftforge.installer.DownloadRegistry;
+import net.minecraftforge.installer.InstallRequest;
 import net.minecraftforge.installer.json.Artifact;
 import net.minecraftforge.installer.json.InstallV1;
 import net.minecraftforge.installer.json.Util;
 import net.minecraftforge.installer.json.Version;
 import net.minecraftforge.installer.json.Version.Library;
-import net.minecraftforge.installer.json.Version.LibraryDownload;
 import net.minecraftforge.installer.ui.TranslatedMessage;
+import org.jetbrains.annotations.Nullable;
 
 public abstract class Action {
     protected final InstallV1 profile;
     protected final ProgressCallback monitor;
     protected final PostProcessors processors;
     protected final Version version;
-    private List<Artifact> grabbed = new ArrayList<>();
+    private List<Artifact> grabbed = Collections.synchronizedList(new ArrayList<>());
+    protected final List<File> sharedLibraries = new ArrayList<>();
 
     protected Action(InstallV1 profile, ProgressCallback monitor, boolean isClient) {
         this.profile = profile;
@@ -46,11 +55,20 @@ public abstract class Action {
     }
 
     protected void error(String message) {
-        if (!SimpleInstaller.headless)
+        if (!InstallRequest.current().isHeadless())
             JOptionPane.showMessageDialog(null, message, "Error", JOptionPane.ERROR_MESSAGE);
         monitor.stage(message);
     }
 
+    /**
+     * Lets the install take libraries and processor outputs from the library directories of other installs, instead
+     * of downloading or building them again. Everything taken is verified against its expected SHA-1.
+     */
+    public void shareLibrariesFrom(Collection<File> librariesDirs) {
+        sharedLibraries.addAll(librariesDirs);
+        processors.shareOutputsFrom(librariesDirs);
+    }
+
     public abstract boolean run(File target, Predicate<String> optionals, File installer) throws ActionCanceledException;
 
     public abstract TargetValidator getTargetValidator();
@@ -58,11 +76,104 @@ public abstract class Action {
     public abstract TranslatedMessage getSuccessMessage();
 
     public String getSponsorMessage() {
-        return profile.getMirror() != null && profile.getMirror().isAdvertised() ? String.format(SimpleInstaller.headless ? "Data kindly mirrored by %2$s at %1$s" : "<html><a href=\'%s\'>Data kindly mirrored by %s</a></html>", profile.getMirror().getHomepage(), profile.getMirror().getName()) : null;
+        return profile.getMirror() != null && profile.getMirror().isAdvertised() ? String.format(InstallRequest.current().isHeadless() ? "Data kindly mirrored by %2$s at %1$s" : "<html><a href=\'%s\'>Data kindly mirrored by %s</a></html>", profile.getMirror().getHomepage(), profile.getMirror().getName()) : null;
+    }
+
+    /**
+     * Downloads the libraries, then runs the processors once the libraries and the Minecraft jar are ready.
+     * <p>
+     * In {@link InstallRequest#pipelined pipelined} mode the processors don't wait for everything: each one starts
+     * as soon as the files it reads are downloaded, while the rest keep downloading in the background.
+     *
+     * @param minecraftJar the stage producing the {@code minecraft} jar, see {@link #runAsync}. It is stopped if the
+     *                     install ends early.
+     */
+    protected boolean downloadAndProcess(File librariesDir, Predicate<String> optionals, List<File> additionalLibDirs, File minecraft, Stage minecraftJar, File root, File installer) throws ActionCanceledException {
+        try {
+            LibraryDownloads downloads = startLibraryDownloads(librariesDir, optionals, additionalLibDirs);
+            if (downloads == null)
+                return false;
+            downloads.track(minecraft, minecraftJar);
+
+            if (!InstallRequest.current().isPipelined()) {
+                if (!finishLibraryDownloads(downloads) || !await(minecraftJar))
+                    return false;
+                checkCancel();
+                return processors.process(librariesDir, minecraft, root, installer);
+            }
+
+            if (!processors.process(librariesDir, minecraft, root, installer, downloads)) {
+                downloads.cancel();
+                checkCancel(); // Report an interrupted wait as a cancellation, not a failure
+                String bad = downloads.getFailures();
+                if (!bad.isEmpty())
+                    error("These libraries failed to download. Try again.\n" + bad);
+                return false;
+            }
+            checkCancel();
+            monitor.stage("Waiting for remaining libraries");
+            return finishLibraryDownloads(downloads) && await(minecraftJar);
+        } finally {
+            minecraftJar.stop();
+        }
+    }
+
+    /**
+     * Runs an install stage on its own thread, so it overlaps with whatever the action does next.
+     * The stage reports its own errors, an unexpected exception counts as a failure.
+     */
+    protected Stage runAsync(String name, Supplier<Boolean> stage) {
+        ExecutorService pool = PostProcessors.newPool("Installer-" + name + "-", 1);
+        Stage ret = new Stage(pool);
+        pool.execute(() -> {
+            try {
+                ret.complete(stage.get());
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                error("Unexpected error: " + e);
+                ret.complete(false);
+            }
+        });
+        pool.shutdown();
+        return ret;
+    }
+
+    /**
+     * Waits for a stage started with {@link #runAsync}.
+     */
+    protected boolean await(CompletableFuture<Boolean> stage) throws ActionCanceledException {
+        try {
+            return stage.get();
+        } catch (InterruptedException e) {
+            throw new ActionCanceledException(e);
+        } catch (ExecutionException e) {
+            return false;
+        }
     }
 
     protected boolean downloadLibraries(File librariesDir, Predicate<String> optionals, List<File> additionalLibDirs) throws ActionCanceledException {
+        LibraryDownloads downloads = startLibraryDownloads(librariesDir, optionals, additionalLibDirs);
+        return downloads != null && finishLibraryDownloads(downloads);
+    }
+
+    /**
+     * Starts extracting the processor data and downloading every library in the background.
+     *
+     * @return the running downloads, or {@code null} if they could not be started
+     */
+    @Nullable
+    protected LibraryDownloads startLibraryDownloads(File librariesDir, Predicate<String> optionals, List<File> additionalLibDirs) {
+        // The processor data files come from the installer archive, so they can be extracted while libraries download
+        try {
+            processors.startDataExtraction();
+        } catch (IOException e) {
+            e.printStackTrace();
+            error("Failed to create temporary directory for processor data");
+            return null;
+        }
+
         monitor.start("Downloading libraries");
+        additionalLibDirs.addAll(0, sharedLibraries);
         String userHome = System.getProperty("user.home");
         if (userHome != null && !userHome.isEmpty()) {
             File mavenLocalHome = new File(userHome, ".m2/repository");
@@ -76,21 +187,23 @@ public abstract class Action {
         libraries.addAll(Arrays.asList(version.getLibraries()));
         libraries.addAll(Arrays.asList(processors.getLibraries()));
 
-        StringBuilder output = new StringBuilder();
         monitor.getStepProgress().setMaxProgress(libraries.size());
-        int progress = 0;
+        DownloadRegistry registry = new DownloadRegistry();
+        LibraryDownloads downloads = new LibraryDownloads(monitor, registry, librariesDir, optionals, grabbed, additionalLibDirs);
+        downloads.submitAll(libraries, processors.getCriticalLibraries(librariesDir));
+        if (registry.getDuplicates() > 0)
+            monitor.message(String.format("%d libraries are listed more than once, downloading each only once", registry.getDuplicates()));
+        return downloads;
+    }
 
-        final ProgressCallback targetMonitor = monitor.withoutDownloadProgress();
-        for (Library lib : libraries) {
-            checkCancel();
-            if (!DownloadUtils.downloadLibrary(targetMonitor, lib, librariesDir, optionals, grabbed, additionalLibDirs)) {
-                LibraryDownload download = lib.getDownloads() == null ? null : lib.getDownloads().getArtifact();
-                if (download != null && !download.getUrl().isEmpty()) // If it doesn't have a URL we can't download it, assume we install it later
-                    output.append('\n').append(lib.getName());
-            }
-            monitor.getStepProgress().progress(++progress);
+    protected boolean finishLibraryDownloads(LibraryDownloads downloads) throws ActionCanceledException {
+        String bad;
+        try {
+            bad = downloads.awaitAll();
+        } catch (InterruptedException e) {
+            downloads.cancel();
+            throw new ActionCanceledException(e);
         }
-        String bad = output.toString();
         if (!bad.isEmpty()) {
             error("These libraries failed to download. Try again.\n" + bad);
             return false;
@@ -113,4 +226,36 @@ public abstract class Action {
             throw new ActionCanceledException(e);
         }
     }
+
+    /**
+     * An install stage running on its own thread, see {@link #runAsync}.
+     */
+    protected static class Stage extends CompletableFuture<Boolean> {
+        private final ExecutorService pool;
+
+        private Stage(ExecutorService pool) {
+            this.pool = pool;
+        }
+
+        /**
+         * Interrupts the stage if it is still running and waits for its thread to end, so it doesn't write to its
+         * target anymore once the install has given up.
+         */
+        void stop() {
+            if (!isDone())
+                cancel(false);
+            pool.shutdownNow();
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    if (pool.awaitTermination(1, TimeUnit.MINUTES))
+                        break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
 }
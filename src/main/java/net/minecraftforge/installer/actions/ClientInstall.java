@@ -24,9 +24,9 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.function.Predicate;
+import net.minecraftforge.installer.InstallRequest;
 import net.minecraftforge.installer.json.InstallV1;
 import net.minecraftforge.installer.json.Util;
 import net.minecraftforge.installer.json.Version;
@@ -40,6 +40,14 @@ public class ClientInstall extends Action {
 
     @Override
     public boolean run(File target, Predicate<String> optionals, File installer) throws ActionCanceledException {
+        try {
+            return install(target, optionals, installer);
+        } finally {
+            processors.cleanup();
+        }
+    }
+
+    private boolean install(File target, Predicate<String> optionals, File installer) throws ActionCanceledException {
         if (!target.exists()) {
             error("There is no minecraft installation at: " + target);
             return false;
@@ -58,19 +66,6 @@ public class ClientInstall extends Action {
 
         checkCancel();
 
-        // Extract version json
-        monitor.stage("Extracting json");
-        try (InputStream stream = Util.class.getResourceAsStream(profile.getJson())) {
-            File json = new File(versionRoot, profile.getVersion() + '/' + profile.getVersion() + ".json");
-            json.getParentFile().mkdirs();
-            Files.copy(stream, json.toPath(), StandardCopyOption.REPLACE_EXISTING);
-        } catch (IOException e) {
-            error("  Failed to extract");
-            e.printStackTrace();
-            return false;
-        }
-        checkCancel();
-
         // Download Vanilla main jar/json
         monitor.stage("Considering minecraft client jar");
         File versionVanilla = new File(versionRoot, profile.getMinecraft());
@@ -81,39 +76,34 @@ public class ClientInstall extends Action {
             } else
                 versionVanilla.mkdirs();
         }
-        checkCancel();
 
+        // Downloaded in the background while the json is extracted and the libraries download
         File clientTarget = new File(versionVanilla, profile.getMinecraft() + ".jar");
-        if (!clientTarget.exists()) {
-            File versionJson = new File(versionVanilla, profile.getMinecraft() + ".json");
-            Version vanilla = Util.getVanillaVersion(monitor, profile.getMinecraft(), versionJson);
-            if (vanilla == null) {
-                error("Failed to download version manifest, can not find client jar URL.");
-                return false;
-            }
-
-            Download client = vanilla.getDownload("client");
-            if (client == null) {
-                error("Failed to download minecraft client, info missing from manifest: " + versionJson);
-                return false;
-            }
+        Stage clientJar = runAsync("Minecraft", () -> monitor.phase("minecraft_jar", () -> downloadClient(versionVanilla, clientTarget)));
+        boolean handedOff = false;
+        try {
+            checkCancel();
 
-            if (!monitor.downloader(client.getUrl())
-                    .sha(client.getSha1())
-                    .localPath("minecraft/" + profile.getMinecraft() + "/client.jar")
-                    .download(clientTarget)) {
-                clientTarget.delete();
-                error("Downloading minecraft client failed, invalid checksum.\n" +
-                        "Try again, or use the vanilla launcher to install the vanilla version.");
+            // Extract version json
+            monitor.stage("Extracting json");
+            try {
+                File json = new File(versionRoot, profile.getVersion() + '/' + profile.getVersion() + ".json");
+                json.getParentFile().mkdirs();
+                if (!InstallRequest.current().getArchive().extract(profile.getJson(), json.toPath()))
+                    throw new IOException("Missing " + profile.getJson() + " in installer archive");
+            } catch (IOException e) {
+                error("  Failed to extract");
+                e.printStackTrace();
                 return false;
             }
+            checkCancel();
+            handedOff = true;
+        } finally {
+            // From here downloadAndProcess stops it
+            if (!handedOff)
+                clientJar.stop();
         }
 
-        // Download Libraries
-        if (!downloadLibraries(librariesDir, optionals, new ArrayList<>()))
-            return false;
-        checkCancel();
-
         /*
         String modListType = VersionInfo.getModListType();
         File modListFile = new File(target, "mods/mod_list.json");
@@ -144,17 +134,45 @@ public class ClientInstall extends Action {
         }
         */
 
-        if (!processors.process(librariesDir, clientTarget, target, installer))
+        // Download Libraries and run the processors, while the Minecraft jar finishes in the background
+        if (!downloadAndProcess(librariesDir, optionals, new ArrayList<>(), clientTarget, clientJar, target, installer))
             return false;
 
         checkCancel();
 
         monitor.stage("Injecting profile");
-        if (launcherProfiles.exists() && !injectProfile(launcherProfiles))
+        return monitor.phase("profile_injection", () -> (!launcherProfiles.exists() || injectProfile(launcherProfiles))
+                && (!launcherProfilesMS.exists() || injectProfile(launcherProfilesMS)));
+    }
+
+    private boolean downloadClient(File versionVanilla, File clientTarget) {
+        if (clientTarget.exists())
+            return true;
+
+        File versionJson = new File(versionVanilla, profile.getMinecraft() + ".json");
+        Version vanilla = Util.getVanillaVersion(monitor, profile.getMinecraft(), versionJson);
+        if (vanilla == null) {
+            error("Failed to download version manifest, can not find client jar URL.");
             return false;
-        if (launcherProfilesMS.exists() && !injectProfile(launcherProfilesMS))
+        }
+
+        Download client = vanilla.getDownload("client");
+        if (client == null) {
+            error("Failed to download minecraft client, info missing from manifest: " + versionJson);
             return false;
+        }
 
+        // The step progress belongs to the library downloads running alongside
+        if (!monitor.withoutDownloadProgress().downloader(client.getUrl())
+                .sha(client.getSha1())
+                .size(client.getSize())
+                .localPath("minecraft/" + profile.getMinecraft() + "/client.jar")
+                .download(clientTarget)) {
+            clientTarget.delete();
+            error("Downloading minecraft client failed, invalid checksum.\n" +
+                    "Try again, or use the vanilla launcher to install the vanilla version.");
+            return false;
+        }
         return true;
     }
 
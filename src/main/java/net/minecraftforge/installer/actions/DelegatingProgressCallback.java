@@ -0,0 +1,140 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package net.minecraftforge.installer.actions;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLConnection;
+import java.util.Map;
+import net.minecraftforge.installer.HashFunction;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Passes everything on to another callback, for callbacks that only change or observe part of it.
+ */
+public class DelegatingProgressCallback implements ProgressCallback {
+    protected final ProgressCallback delegate;
+
+    public DelegatingProgressCallback(ProgressCallback delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void start(String label) {
+        delegate.start(label);
+    }
+
+    @Override
+    public void stage(String message, boolean withProgress) {
+        delegate.stage(message, withProgress);
+    }
+
+    @Override
+    public void stage(String message) {
+        delegate.stage(message);
+    }
+
+    @Override
+    public void message(String message) {
+        delegate.message(message);
+    }
+
+    @Override
+    public void message(String message, MessagePriority priority) {
+        delegate.message(message, priority);
+    }
+
+    @Override
+    public void setCurrentStep(String step) {
+        delegate.setCurrentStep(step);
+    }
+
+    @Override
+    public String getCurrentStep() {
+        return delegate.getCurrentStep();
+    }
+
+    @Override
+    public ProgressBar getGlobalProgress() {
+        return delegate.getGlobalProgress();
+    }
+
+    @Override
+    public ProgressBar getStepProgress() {
+        return delegate.getStepProgress();
+    }
+
+    @Override
+    public InputStream wrapStepDownload(URLConnection connection) throws IOException {
+        return delegate.wrapStepDownload(connection);
+    }
+
+    @Override
+    public InputStream wrapStepDownload(InputStream in) {
+        return delegate.wrapStepDownload(in);
+    }
+
+    @Override
+    public void phaseStarted(String phase) {
+        delegate.phaseStarted(phase);
+    }
+
+    @Override
+    public void phaseFinished(String phase, long nanos, boolean success) {
+        delegate.phaseFinished(phase, nanos, success);
+    }
+
+    @Override
+    public void downloadStarted(String url, File target) {
+        delegate.downloadStarted(url, target);
+    }
+
+    @Override
+    public void downloadFinished(String url, File target, @Nullable DownloadSource source, long bytes, long nanos, boolean success) {
+        delegate.downloadFinished(url, target, source, bytes, nanos, success);
+    }
+
+    @Override
+    public void processorStarted(String processor) {
+        delegate.processorStarted(processor);
+    }
+
+    @Override
+    public void processorFinished(String processor, long nanos, boolean success) {
+        delegate.processorFinished(processor, nanos, success);
+    }
+
+    @Override
+    public void fileHashed(File file, long bytes, long nanos) {
+        delegate.fileHashed(file, bytes, nanos);
+    }
+
+    @Override
+    public void fileExtracted(String entry, File target, long nanos, boolean success) {
+        delegate.fileExtracted(entry, target, nanos, success);
+    }
+
+    @Override
+    public void fileDigested(File file, Map<HashFunction, String> digests) {
+        delegate.fileDigested(file, digests);
+    }
+
+    @Override
+    public void cacheHit(String kind, String key) {
+        delegate.cacheHit(kind, key);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package net.minecraftforge.installer.actions;
+
+import com.google.gson.JsonObject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+import net.minecraftforge.installer.HashFunction;
+import net.minecraftforge.installer.json.Util;
+
+/**
+ * Collects the digests of every downloaded library and processor output, as requested with
+ * {@link net.minecraftforge.installer.InstallRequest#digest}, to write them out once the install is done.
+ */
+public class DigestsCallback extends DelegatingProgressCallback {
+    private final Map<String, Map<HashFunction, String>> files = new TreeMap<>();
+
+    public DigestsCallback(ProgressCallback delegate) {
+        super(delegate);
+    }
+
+    @Override
+    public void fileDigested(File file, Map<HashFunction, String> digests) {
+        synchronized (files) {
+            files.put(file.getAbsolutePath(), digests);
+        }
+        super.fileDigested(file, digests);
+    }
+
+    /**
+     * Writes the digests of each file as JSON, keyed by path.
+     */
+    public void write(File file) throws IOException {
+        JsonObject json = new JsonObject();
+        synchronized (files) {
+            for (Map.Entry<String, Map<HashFunction, String>> e : files.entrySet()) {
+                JsonObject digests = new JsonObject();
+                for (Map.Entry<HashFunction, String> digest : e.getValue().entrySet())
+                    digests.addProperty(digest.getKey().getExtension(), digest.getValue());
+                json.add(e.getKey(), digests);
+            }
+        }
+        if (file.getAbsoluteFile().getParentFile() != null)
+            file.getAbsoluteFile().getParentFile().mkdirs();
+        Files.write(file.toPath(), Util.GSON.toJson(json).getBytes(StandardCharsets.UTF_8));
+    }
+}
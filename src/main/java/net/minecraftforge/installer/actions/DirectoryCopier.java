@@ -0,0 +1,64 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package net.minecraftforge.installer.actions;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Copies the files of an installed directory into another directory.
+ * <p>
+ * Files that are never written to after they are installed, like libraries, can be hard linked instead of copied,
+ * which takes no extra space and almost no time. When a link can't be made, for example because the target is on
+ * another file system, the file is copied instead. Existing files in the target are replaced, never written through,
+ * so a file linked into several directories is never changed for all of them at once.
+ */
+public class DirectoryCopier {
+    private int linked = 0;
+    private int copied = 0;
+
+    /**
+     * Copies or links a single file, whose parent directory must exist.
+     *
+     * @return whether the file was linked
+     */
+    boolean copyFile(Path file, Path target, boolean link) throws IOException {
+        Files.deleteIfExists(target);
+        if (link) {
+            try {
+                Files.createLink(target, file);
+                linked++;
+                return true;
+            } catch (IOException | UnsupportedOperationException e) {
+                // Fall back to a copy
+            }
+        }
+        // Keeps the permissions, so scripts stay executable
+        Files.copy(file, target, StandardCopyOption.COPY_ATTRIBUTES);
+        copied++;
+        return false;
+    }
+
+    public int getLinked() {
+        return linked;
+    }
+
+    public int getCopied() {
+        return copied;
+    }
+}
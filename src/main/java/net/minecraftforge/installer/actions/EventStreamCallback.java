@@ -0,0 +1,182 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package net.minecraftforge.installer.actions;
+
+import com.google.gson.JsonObject;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import net.minecraftforge.installer.HashFunction;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Writes the structured events of the install as newline delimited JSON, one object per line, while passing
+ * everything on to another callback. Every event has the wall clock time in {@code ts} (milliseconds since the epoch),
+ * its type in {@code event} and the thread it was sent from; events that end something also have {@code duration_ms}.
+ * <p>
+ * Each line is flushed as soon as it is written, so the stream can be followed while the install runs.
+ */
+public class EventStreamCallback extends DelegatingProgressCallback {
+    private final Writer out;
+
+    public EventStreamCallback(ProgressCallback delegate, OutputStream out) {
+        super(delegate);
+        this.out = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Opens the target of {@code --events-out}: {@code -} or {@code 1} for standard output, {@code 2} for standard
+     * error, another number for that file descriptor where the OS exposes them as {@code /dev/fd}, and a file path for
+     * anything else.
+     */
+    public static OutputStream open(String target) throws IOException {
+        if (target.equals("-") || target.equals("1"))
+            return new FileOutputStream(FileDescriptor.out); // Not System.out, which carries the log
+        if (target.equals("2"))
+            return new FileOutputStream(FileDescriptor.err);
+        if (target.matches("\\d+"))
+            return new FileOutputStream("/dev/fd/" + target);
+        File file = new File(target);
+        if (file.getAbsoluteFile().getParentFile() != null)
+            file.getAbsoluteFile().getParentFile().mkdirs();
+        return new FileOutputStream(file);
+    }
+
+    @Override
+    public void phaseStarted(String phase) {
+        JsonObject event = event("phase_start");
+        event.addProperty("phase", phase);
+        write(event);
+        super.phaseStarted(phase);
+    }
+
+    @Override
+    public void phaseFinished(String phase, long nanos, boolean success) {
+        JsonObject event = event("phase_end");
+        event.addProperty("phase", phase);
+        event.addProperty("duration_ms", nanos / 1e6);
+        event.addProperty("success", success);
+        write(event);
+        super.phaseFinished(phase, nanos, success);
+    }
+
+    @Override
+    public void downloadStarted(String url, File target) {
+        JsonObject event = event("download_start");
+        event.addProperty("url", url);
+        event.addProperty("file", target.getAbsolutePath());
+        write(event);
+        super.downloadStarted(url, target);
+    }
+
+    @Override
+    public void downloadFinished(String url, File target, @Nullable DownloadSource source, long bytes, long nanos, boolean success) {
+        JsonObject event = event("download_end");
+        event.addProperty("url", url);
+        event.addProperty("file", target.getAbsolutePath());
+        if (source != null)
+            event.addProperty("source", source.name().toLowerCase(Locale.ROOT));
+        event.addProperty("bytes", bytes);
+        event.addProperty("duration_ms", nanos / 1e6);
+        event.addProperty("success", success);
+        write(event);
+        super.downloadFinished(url, target, source, bytes, nanos, success);
+    }
+
+    @Override
+    public void processorStarted(String processor) {
+        JsonObject event = event("processor_start");
+        event.addProperty("processor", processor);
+        write(event);
+        super.processorStarted(processor);
+    }
+
+    @Override
+    public void processorFinished(String processor, long nanos, boolean success) {
+        JsonObject event = event("processor_end");
+        event.addProperty("processor", processor);
+        event.addProperty("duration_ms", nanos / 1e6);
+        event.addProperty("success", success);
+        write(event);
+        super.processorFinished(processor, nanos, success);
+    }
+
+    @Override
+    public void fileHashed(File file, long bytes, long nanos) {
+        JsonObject event = event("hash");
+        event.addProperty("file", file.getAbsolutePath());
+        event.addProperty("bytes", bytes);
+        event.addProperty("duration_ms", nanos / 1e6);
+        write(event);
+        super.fileHashed(file, bytes, nanos);
+    }
+
+    @Override
+    public void fileExtracted(String entry, File target, long nanos, boolean success) {
+        JsonObject event = event("extract");
+        event.addProperty("entry", entry);
+        event.addProperty("file", target.getAbsolutePath());
+        event.addProperty("duration_ms", nanos / 1e6);
+        event.addProperty("success", success);
+        write(event);
+        super.fileExtracted(entry, target, nanos, success);
+    }
+
+    @Override
+    public void fileDigested(File file, Map<HashFunction, String> digests) {
+        JsonObject event = event("digest");
+        event.addProperty("file", file.getAbsolutePath());
+        for (Map.Entry<HashFunction, String> e : digests.entrySet())
+            event.addProperty(e.getKey().getExtension(), e.getValue());
+        write(event);
+        super.fileDigested(file, digests);
+    }
+
+    @Override
+    public void cacheHit(String kind, String key) {
+        JsonObject event = event("cache_hit");
+        event.addProperty("kind", kind);
+        event.addProperty("key", key);
+        write(event);
+        super.cacheHit(kind, key);
+    }
+
+    private static JsonObject event(String type) {
+        JsonObject event = new JsonObject();
+        event.addProperty("ts", System.currentTimeMillis());
+        event.addProperty("event", type);
+        event.addProperty("thread", Thread.currentThread().getName());
+        return event;
+    }
+
+    private synchronized void write(JsonObject event) {
+        try {
+            out.write(event.toString());
+            out.write('\n');
+            out.flush();
+        } catch (IOException e) {
+            // The events are only informational, losing them must not fail the install
+            e.printStackTrace();
+        }
+    }
+}
@@ -21,6 +21,8 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumSet;
@@ -28,13 +30,18 @@ import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Predicate;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
 import java.util.zip.ZipEntry;
+import net.minecraftforge.installer.ConcurrencyController;
 import net.minecraftforge.installer.DownloadUtils;
+import net.minecraftforge.installer.IOUtils;
+import net.minecraftforge.installer.InstallRequest;
 import net.minecraftforge.installer.json.InstallV1;
 import net.minecraftforge.installer.json.Util;
 import net.minecraftforge.installer.json.Version;
@@ -42,10 +49,11 @@ import net.minecraftforge.installer.ui.TranslatedMessage;
 import org.jetbrains.annotations.Nullable;
 
 public class FatInstallerAction extends Action {
-    public static final EnumSet<Options> OPTIONS = EnumSet.noneOf(Options.class);
+    private final Set<Options> options;
 
     protected FatInstallerAction(InstallV1 profile, ProgressCallback monitor) {
         super(profile, monitor, true);
+        this.options = InstallRequest.current().getFatOptions();
     }
 
     @Override
@@ -63,47 +71,24 @@ public class FatInstallerAction extends Action {
             }
 
             monitor.stage("Downloading metadata");
-            writeFromUrl(out, "version_manifest.json", DownloadUtils.MANIFEST_URL);
-            net.minecraftforge.installer.json.Manifest.Info man = DownloadUtils.downloadManifest(monitor).get(profile.getMinecraft());
-            writeFromUrl(out, "minecraft/" + profile.getMinecraft() + ".json", man.getUrl());
-            Version version = Util.getVersionUncached(monitor, man.getUrl());
-            if (OPTIONS.contains(Options.MC_JAR)) {
-                monitor.stage("Downloading client jar");
-                writeFromUrl(out, "minecraft/" + profile.getMinecraft() + "/client.jar", version.getDownload("client").getUrl());
-                monitor.stage("Downloading server jar");
-                writeFromUrl(out, "minecraft/" + profile.getMinecraft() + "/server.jar", version.getDownload("server").getUrl());
-
-                monitor.stage("Downloading client mappings");
-                writeFromUrl(out, "minecraft/" + profile.getMinecraft() + "/client_mappings.txt", version.getDownload("client_mappings").getUrl());
-                monitor.stage("Downloading server mappings");
-                writeFromUrl(out, "minecraft/" + profile.getMinecraft() + "/server_mappings.txt", version.getDownload("server_mappings").getUrl());
+            Version version = monitor.phase("metadata", () -> {
+                writeFromUrl(out, "version_manifest.json", DownloadUtils.MANIFEST_URL);
+                net.minecraftforge.installer.json.Manifest.Info man = DownloadUtils.downloadManifest(monitor).get(profile.getMinecraft());
+                writeFromUrl(out, "minecraft/" + profile.getMinecraft() + ".json", man.getUrl());
+                return Util.getVersionUncached(monitor, man.getUrl());
+            });
+            if (options.contains(Options.MC_JAR)) {
+                monitor.phase("minecraft_jars", () -> {
+                    writeMinecraftJars(out, version);
+                    return true;
+                });
             }
 
-            if (OPTIONS.contains(Options.MC_LIBS) || OPTIONS.contains(Options.INSTALLER_LIBS)) {
-                final List<Version.Library> libraries = new ArrayList<>();
-                if (OPTIONS.contains(Options.MC_LIBS)) {
-                    libraries.addAll(Arrays.asList(version.getLibraries()));
-                }
-                if (OPTIONS.contains(Options.INSTALLER_LIBS)) {
-                    libraries.addAll(Arrays.asList(processors.getLibraries()));
-
-                    monitor.stage("Downloading server starter jar");
-                    writeFromUrl(out, "serverstarter.jar", DownloadUtils.SERVER_STARTER_JAR);
-                }
-
-                Set<String> duplicates = new HashSet<>();
-                libraries.removeIf(library -> !duplicates.add(library.getDownloads() == null ? null : library.getDownloads().getArtifact().getPath()));
-                monitor.stage("Downloading libraries");
-                monitor.getGlobalProgress().setMaxProgress(libraries.size());
-                int progress = 0;
-                for (Version.Library library : libraries) {
-                    Version.LibraryDownload download = library.getDownloads() == null ? null : library.getDownloads().getArtifact();
-                    if (download != null) {
-                        monitor.message("Downloading " + download.getPath());
-                        writeFromUrl(out, download.getPath(), download.getUrl(), download.getPath());
-                    }
-                    monitor.getGlobalProgress().progress(++progress);
-                }
+            if (options.contains(Options.MC_LIBS) || options.contains(Options.INSTALLER_LIBS)) {
+                monitor.phase("libraries", () -> {
+                    writeLibraries(out, version);
+                    return true;
+                });
             }
 
             return true;
@@ -112,24 +97,104 @@ public class FatInstallerAction extends Action {
         }
     }
 
+    private void writeMinecraftJars(JarOutputStream out, Version version) throws IOException {
+        monitor.stage("Downloading client jar");
+        writeFromUrl(out, "minecraft/" + profile.getMinecraft() + "/client.jar", version.getDownload("client").getUrl());
+        monitor.stage("Downloading server jar");
+        writeFromUrl(out, "minecraft/" + profile.getMinecraft() + "/server.jar", version.getDownload("server").getUrl());
+
+        monitor.stage("Downloading client mappings");
+        writeFromUrl(out, "minecraft/" + profile.getMinecraft() + "/client_mappings.txt", version.getDownload("client_mappings").getUrl());
+        monitor.stage("Downloading server mappings");
+        writeFromUrl(out, "minecraft/" + profile.getMinecraft() + "/server_mappings.txt", version.getDownload("server_mappings").getUrl());
+    }
+
+    private void writeLibraries(JarOutputStream out, Version version) throws IOException {
+        final List<Version.Library> libraries = new ArrayList<>();
+        if (options.contains(Options.MC_LIBS)) {
+            libraries.addAll(Arrays.asList(version.getLibraries()));
+        }
+        if (options.contains(Options.INSTALLER_LIBS)) {
+            libraries.addAll(Arrays.asList(processors.getLibraries()));
+
+            monitor.stage("Downloading server starter jar");
+            writeFromUrl(out, "serverstarter.jar", DownloadUtils.SERVER_STARTER_JAR);
+        }
+
+        Set<String> duplicates = new HashSet<>();
+        libraries.removeIf(library -> !duplicates.add(library.getDownloads() == null ? null : library.getDownloads().getArtifact().getPath()));
+        monitor.stage("Downloading libraries");
+        monitor.getGlobalProgress().setMaxProgress(libraries.size());
+        int progress = 0;
+        // Libraries download side by side into a temporary directory, and are written to the jar in order
+        Path temp = Files.createTempDirectory("neoforge_fat");
+        ConcurrencyController controller = new ConcurrencyController();
+        ExecutorService pool = PostProcessors.newThreadPool("Installer-Downloader-", InstallRequest.current().getMaxDownloads());
+        try {
+            List<CompletableFuture<Path>> files = new ArrayList<>();
+            for (Version.Library library : libraries) {
+                Version.LibraryDownload download = library.getDownloads() == null ? null : library.getDownloads().getArtifact();
+                files.add(download == null ? CompletableFuture.completedFuture(null) : CompletableFuture.supplyAsync(() -> fetch(controller, download, temp), pool));
+            }
+
+            for (int x = 0; x < libraries.size(); x++) {
+                Version.Library library = libraries.get(x);
+                Version.LibraryDownload download = library.getDownloads() == null ? null : library.getDownloads().getArtifact();
+                if (download != null) {
+                    Path file = files.get(x).join();
+                    if (file == null)
+                        throw new IOException("Failed to download " + download.getPath() + " from " + download.getUrl());
+                    try (InputStream stream = Files.newInputStream(file)) {
+                        writeEntry(out, download.getPath(), stream);
+                    }
+                    Files.delete(file);
+                }
+                monitor.getGlobalProgress().progress(++progress);
+            }
+        } finally {
+            pool.shutdownNow();
+            Workspace.delete(temp);
+        }
+    }
+
     private void writeFromUrl(JarOutputStream jos, String name, String url) throws IOException {
         writeFromUrl(jos, name, url, null);
     }
 
     private void writeFromUrl(JarOutputStream jos, String name, String url, @Nullable String localPath) throws IOException {
-        JarEntry entry = new JarEntry("maven/" + name);
-        jos.putNextEntry(entry);
         try (InputStream stream = monitor.downloader(url)
                 .localPath(localPath)
                 .openStream()) {
-            copy(stream, jos);
+            writeEntry(jos, name, stream);
         }
+    }
+
+    private void writeEntry(JarOutputStream jos, String name, InputStream stream) throws IOException {
+        JarEntry entry = new JarEntry("maven/" + name);
+        jos.putNextEntry(entry);
+        copy(stream, jos);
         jos.closeEntry();
     }
 
+    // Downloads and verifies a library into the directory, returning null if it failed
+    @Nullable
+    private Path fetch(ConcurrencyController controller, Version.LibraryDownload download, Path dir) {
+        Path file = dir.resolve(download.getPath());
+        try (ConcurrencyController.Permit permit = controller.acquire(download.getUrl())) {
+            monitor.message("Downloading " + download.getPath());
+            return monitor.withoutDownloadProgress().downloader(download.getUrl())
+                    .sha(download.getSha1())
+                    .size(download.getSize())
+                    .localPath(download.getPath())
+                    .download(file.toFile()) ? file : null;
+        } catch (InterruptedException e) {
+            return null;
+        }
+    }
+
     private Manifest newManifest(Manifest input) {
         Manifest man = new Manifest(input);
-        if (OPTIONS.size() == 3) {
+        if (options.containsAll(EnumSet.of(Options.MC_JAR, Options.MC_LIBS, Options.INSTALLER_LIBS))) {
             man.getMainAttributes().putValue("Offline", "true");
         }
         return man;
@@ -152,10 +217,6 @@ public class FatInstallerAction extends Action {
     }
 
     private static void copy(InputStream source, OutputStream target) throws IOException {
-        byte[] buf = new byte[8192];
-        int length;
-        while ((length = source.read(buf)) != -1) {
-            target.write(buf, 0, length);
-        }
+        IOUtils.copy(source, target);
     }
 }
@@ -0,0 +1,237 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package net.minecraftforge.installer.actions;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import net.minecraftforge.installer.ConcurrencyController;
+import net.minecraftforge.installer.DownloadRegistry;
+import net.minecraftforge.installer.DownloadUtils;
+import net.minecraftforge.installer.FlightRecorderEvents;
+import net.minecraftforge.installer.InstallRequest;
+import net.minecraftforge.installer.actions.ProgressCallback.MessagePriority;
+import net.minecraftforge.installer.json.Artifact;
+import net.minecraftforge.installer.json.Version.Library;
+import net.minecraftforge.installer.json.Version.LibraryDownload;
+
+/**
+ * Downloads libraries in the background, keeping track of each target file so that work which only needs some of
+ * the libraries, like a single processor, can start as soon as those are done. How many download at once is left to
+ * a {@link ConcurrencyController}.
+ */
+public class LibraryDownloads {
+    private final ProgressCallback monitor;
+    private final ProgressCallback targetMonitor;
+    private final DownloadRegistry registry;
+    private final File librariesDir;
+    private final Predicate<String> optionals;
+    private final List<Artifact> grabbed;
+    private final List<File> additionalLibDirs;
+    private final ConcurrencyController controller = new ConcurrencyController();
+    // Threads beyond the controller's current limit just wait for a permit
+    private final ExecutorService pool = PostProcessors.newThreadPool("Installer-Downloader-", InstallRequest.current().getMaxDownloads());
+    // Once canceled, downloads run right away instead, they end at once without fetching anything
+    private final Executor executor = task -> {
+        try {
+            pool.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+    };
+    private final Map<File, CompletableFuture<Boolean>> tracked = new HashMap<>();
+    private final List<CompletableFuture<Boolean>> tasks = new ArrayList<>();
+    private final List<Artifact> failed = new ArrayList<>();
+    private final AtomicInteger progress = new AtomicInteger();
+    // The install thread, which is interrupted when the install is canceled
+    private final Thread owner = Thread.currentThread();
+    private volatile boolean canceled = false;
+
+    /**
+     * @param registry the downloads of this run, so files requested more than once are only downloaded once
+     * @param grabbed  receives every library that was downloaded, must be safe to add to from several threads
+     */
+    public LibraryDownloads(ProgressCallback monitor, DownloadRegistry registry, File librariesDir, Predicate<String> optionals, List<Artifact> grabbed, List<File> additionalLibDirs) {
+        this.monitor = monitor;
+        this.targetMonitor = monitor.withoutDownloadProgress();
+        this.registry = registry;
+        this.librariesDir = librariesDir;
+        this.optionals = optionals;
+        this.grabbed = grabbed;
+        this.additionalLibDirs = additionalLibDirs;
+    }
+
+    /**
+     * Submits the libraries in critical path order. The given critical libraries go first, in the order they are
+     * needed, so whatever waits on them can start early. The rest go largest first, so no large download is left
+     * running on its own at the end.
+     *
+     * @param critical the files that are needed first, like the processor jars and classpaths
+     */
+    public synchronized void submitAll(Collection<Library> libraries, List<File> critical) {
+        Map<File, Integer> rank = new HashMap<>();
+        for (File file : critical)
+            rank.putIfAbsent(file.getAbsoluteFile(), rank.size());
+
+        long start = System.nanoTime();
+        monitor.phaseStarted("libraries");
+        FlightRecorderEvents.Span span = FlightRecorderEvents.libraries(libraries.size());
+        List<Library> sorted = new ArrayList<>(libraries);
+        sorted.sort(Comparator.comparingInt((Library lib) -> rank.getOrDefault(lib.getName().getLocalPath(librariesDir).getAbsoluteFile(), Integer.MAX_VALUE))
+                .thenComparing(Comparator.comparingLong(LibraryDownloads::getSize).reversed()));
+        for (Library lib : sorted)
+            submit(lib);
+        // Ends when the last download does, even if nothing waits for all of them until much later
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0]))
+                .whenComplete((v, e) -> {
+                    boolean success = !canceled && getFailures().isEmpty();
+                    monitor.phaseFinished("libraries", System.nanoTime() - start, success);
+                    span.success(success);
+                    span.close();
+                });
+    }
+
+    public synchronized void submit(Library lib) {
+        File target = lib.getName().getLocalPath(librariesDir);
+        LibraryDownload download = lib.getDownloads() == null ? null : lib.getDownloads().getArtifact();
+        // A library is often listed by both the version and the processors, it is only fetched and verified once
+        CompletableFuture<Boolean> flight = registry.download(target, download == null ? null : download.getSha1(), () -> download(lib), executor);
+        tasks.add(flight.whenComplete((ok, e) -> monitor.getStepProgress().progress(progress.incrementAndGet())));
+    }
+
+    /**
+     * Makes {@link #await} wait for a file that is produced elsewhere, like the Minecraft jar.
+     * It is not waited for by {@link #awaitAll}, the producer reports its own errors.
+     */
+    public synchronized void track(File file, CompletableFuture<Boolean> future) {
+        tracked.put(file.getAbsoluteFile(), future);
+    }
+
+    /**
+     * Waits until every download of the given files has finished. Files that aren't being downloaded are ignored,
+     * checking that the files exist is left to the caller.
+     *
+     * @return {@code false} if any of the downloads failed
+     */
+    public boolean await(Collection<File> files) throws InterruptedException {
+        List<CompletableFuture<Boolean>> pending = new ArrayList<>();
+        synchronized (this) {
+            for (File file : files) {
+                CompletableFuture<Boolean> future = tracked.containsKey(file.getAbsoluteFile()) ? tracked.get(file.getAbsoluteFile()) : registry.get(file);
+                if (future != null)
+                    pending.add(future);
+            }
+        }
+
+        long running = pending.stream().filter(f -> !f.isDone()).count();
+        if (running > 0)
+            monitor.message("  Waiting for " + running + " downloads", MessagePriority.LOW);
+        boolean success = true;
+        for (CompletableFuture<Boolean> future : pending) {
+            try {
+                success &= future.get();
+            } catch (ExecutionException e) {
+                success = false;
+            }
+        }
+        return success;
+    }
+
+    /**
+     * Waits for every download to finish.
+     *
+     * @return the libraries that failed to download, one per line, or an empty string if all succeeded
+     */
+    public String awaitAll() throws InterruptedException {
+        CompletableFuture<?>[] all;
+        synchronized (this) {
+            all = tasks.toArray(new CompletableFuture[0]);
+        }
+        try {
+            CompletableFuture.allOf(all).get();
+        } catch (ExecutionException e) {
+            // download() handles its own errors
+        }
+        pool.shutdown();
+        return getFailures();
+    }
+
+    /**
+     * @return the libraries that failed to download so far, one per line
+     */
+    public String getFailures() {
+        StringBuilder output = new StringBuilder();
+        synchronized (failed) {
+            for (Artifact artifact : failed)
+                output.append('\n').append(artifact);
+        }
+        return output.toString();
+    }
+
+    /**
+     * Stops all downloads that haven't finished yet. The ones that didn't start yet fail right away, so everything
+     * waiting on them ends.
+     */
+    public void cancel() {
+        canceled = true;
+        for (Runnable queued : pool.shutdownNow())
+            queued.run();
+    }
+
+    private static long getSize(Library lib) {
+        LibraryDownload download = lib.getDownloads() == null ? null : lib.getDownloads().getArtifact();
+        return download == null ? 0 : download.getSize();
+    }
+
+    private boolean download(Library lib) {
+        // Checked before each library, as the install thread may not be waiting on the downloads when canceled
+        if (canceled || owner.isInterrupted() || Thread.currentThread().isInterrupted())
+            return false;
+
+        LibraryDownload download = lib.getDownloads() == null ? null : lib.getDownloads().getArtifact();
+        boolean success;
+        try (ConcurrencyController.Permit permit = controller.acquire(download == null ? null : download.getUrl())) {
+            success = DownloadUtils.downloadLibrary(targetMonitor, lib, librariesDir, optionals, grabbed, additionalLibDirs);
+        } catch (InterruptedException e) {
+            return false; // Canceled
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            success = false;
+        }
+
+        if (!success) {
+            if (download != null && !download.getUrl().isEmpty()) { // If it doesn't have a URL we can't download it, assume we install it later
+                synchronized (failed) {
+                    failed.add(lib.getName());
+                }
+            } else {
+                success = true;
+            }
+        }
+        return success;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package net.minecraftforge.installer.actions;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+import net.minecraftforge.installer.Metrics;
+import net.minecraftforge.installer.json.Util;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Collects the timings of the install from its events into {@link Metrics}:
+ * <ul>
+ * <li>{@code phase.<name>}: the time of each phase, like {@code phase.manifest} or {@code phase.processors}</li>
+ * <li>{@code download.<source>}: the time of each download by where it came from, with the bytes in
+ * {@code download.<source>.bytes}</li>
+ * <li>{@code hash}: the time spent checking files, with the bytes in {@code hash.bytes}</li>
+ * <li>{@code extract}: the time spent extracting processor data from the installer</li>
+ * <li>{@code processor.<name>}: the wall time of each processor that ran</li>
+ * <li>{@code cache_hit.<kind>}: the work skipped because its result already existed</li>
+ * </ul>
+ * Failures are counted in {@code <metric>.failed}. The report also lists every download on its own.
+ */
+public class MetricsCallback extends DelegatingProgressCallback {
+    private final Metrics metrics = new Metrics();
+    private final JsonArray downloads = new JsonArray();
+
+    public MetricsCallback(ProgressCallback delegate) {
+        super(delegate);
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void phaseFinished(String phase, long nanos, boolean success) {
+        metrics.time("phase." + phase, nanos);
+        if (!success)
+            metrics.count("phase." + phase + ".failed", 1);
+        super.phaseFinished(phase, nanos, success);
+    }
+
+    @Override
+    public void downloadFinished(String url, File target, @Nullable DownloadSource source, long bytes, long nanos, boolean success) {
+        if (success && source != null) {
+            String name = "download." + source.name().toLowerCase(Locale.ROOT);
+            metrics.time(name, nanos);
+            metrics.count(name + ".bytes", bytes);
+        } else {
+            metrics.count("download.failed", 1);
+        }
+
+        JsonObject download = new JsonObject();
+        download.addProperty("file", target.getAbsolutePath());
+        download.addProperty("url", url);
+        if (source != null)
+            download.addProperty("source", source.name().toLowerCase(Locale.ROOT));
+        download.addProperty("bytes", bytes);
+        download.addProperty("duration_ms", nanos / 1e6);
+        download.addProperty("success", success);
+        synchronized (downloads) {
+            downloads.add(download);
+        }
+        super.downloadFinished(url, target, source, bytes, nanos, success);
+    }
+
+    @Override
+    public void processorFinished(String processor, long nanos, boolean success) {
+        metrics.time("processor." + processor, nanos);
+        if (!success)
+            metrics.count("processor." + processor + ".failed", 1);
+        super.processorFinished(processor, nanos, success);
+    }
+
+    @Override
+    public void fileHashed(File file, long bytes, long nanos) {
+        metrics.time("hash", nanos);
+        metrics.count("hash.bytes", bytes);
+        super.fileHashed(file, bytes, nanos);
+    }
+
+    @Override
+    public void fileExtracted(String entry, File target, long nanos, boolean success) {
+        metrics.time("extract", nanos);
+        if (!success)
+            metrics.count("extract.failed", 1);
+        super.fileExtracted(entry, target, nanos, success);
+    }
+
+    @Override
+    public void cacheHit(String kind, String key) {
+        metrics.count("cache_hit." + kind, 1);
+        super.cacheHit(kind, key);
+    }
+
+    /**
+     * Prints the metrics to the delegate, if anything was recorded.
+     */
+    public void printSummary() {
+        if (metrics.isEmpty())
+            return;
+        delegate.message("Install metrics:");
+        for (String line : metrics.summary())
+            delegate.message("  " + line);
+
+        Metrics.Timer network = metrics.getTimer("download.network");
+        if (network.getTotalNanos() > 0) {
+            long bytes = metrics.getCount("download.network.bytes");
+            delegate.message(String.format("  Downloaded %.1f MB from the network at %.2f MB/s per download", bytes / 1048576.0, bytes / 1048576.0 / (network.getTotalNanos() / 1e9)));
+        }
+    }
+
+    /**
+     * Writes the metrics and every download as JSON.
+     */
+    public void writeReport(File file) throws IOException {
+        JsonObject report = metrics.toJson();
+        synchronized (downloads) {
+            report.add("downloads", downloads.deepCopy());
+        }
+        if (file.getAbsoluteFile().getParentFile() != null)
+            file.getAbsoluteFile().getParentFile().mkdirs();
+        Files.write(file.toPath(), Util.GSON.toJson(report).getBytes(StandardCharsets.UTF_8));
+    }
+}
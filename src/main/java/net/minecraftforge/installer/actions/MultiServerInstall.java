@@ -0,0 +1,67 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package net.minecraftforge.installer.actions;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import net.minecraftforge.installer.InstallRequest;
+import net.minecraftforge.installer.InstallerArchive;
+import net.minecraftforge.installer.InstallerEngine;
+
+/**
+ * Installs the servers of several installers in one run, each into its own directory.
+ * <p>
+ * The installs run one after the other. Every install takes the libraries, the Minecraft server jar and the processor
+ * outputs it has in common with an earlier one from that install's directory, verified by their SHA-1, so versions
+ * that share most of their files download and build them only once.
+ */
+public class MultiServerInstall {
+    /**
+     * @param request  the settings for every install
+     * @param installs the installer jar to install into each target directory, in the order to install them
+     */
+    public static boolean run(InstallRequest request, Map<File, File> installs) throws ActionCanceledException {
+        InstallerEngine engine = new InstallerEngine();
+        List<File> shared = new ArrayList<>();
+        for (Map.Entry<File, File> e : installs.entrySet()) {
+            File target = e.getKey();
+            File installer = e.getValue();
+            request.getMonitor().stage("Installing server from " + installer.getName() + " into " + target);
+
+            boolean own = installer.getAbsoluteFile().equals(InstallerArchive.current().getFile());
+            try (InstallerArchive archive = own ? null : InstallerArchive.open(installer)) {
+                InstallRequest install = request.copy()
+                        .action(Actions.SERVER)
+                        .target(target)
+                        .installer(installer)
+                        .shareLibrariesFrom(shared);
+                if (archive != null)
+                    install.archive(archive);
+                if (!engine.install(install))
+                    return false;
+            } catch (IOException | RuntimeException ex) {
+                ex.printStackTrace();
+                request.getMonitor().stage("Failed to read installer " + installer + ": " + ex);
+                return false;
+            }
+            shared.add(new File(target, "libraries"));
+        }
+        return true;
+    }
+}
@@ -23,34 +23,56 @@ import java.net.URL;
 import java.net.URLClassLoader;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.Attributes;
 import java.util.jar.JarFile;
 import java.util.stream.Collectors;
 import javax.swing.JOptionPane;
 import net.minecraftforge.installer.DownloadUtils;
 import net.minecraftforge.installer.Downloader;
-import net.minecraftforge.installer.SimpleInstaller;
+import net.minecraftforge.installer.FlightRecorderEvents;
+import net.minecraftforge.installer.HashFunction;
+import net.minecraftforge.installer.IOUtils;
+import net.minecraftforge.installer.InstallRequest;
 import net.minecraftforge.installer.actions.ProgressCallback.MessagePriority;
 import net.minecraftforge.installer.json.Artifact;
 import net.minecraftforge.installer.json.Install.Processor;
 import net.minecraftforge.installer.json.InstallV1;
 import net.minecraftforge.installer.json.Util;
 import net.minecraftforge.installer.json.Version.Library;
+import org.jetbrains.annotations.Nullable;
 
 public class PostProcessors {
+    private static final int HASH_THREADS = 4;
+    private static final int EXTRACT_THREADS = 4;
+
     private final InstallV1 profile;
     private final boolean isClient;
     private final ProgressCallback monitor;
     private final boolean hasTasks;
     private final Map<String, String> data;
     private final List<Processor> processors;
+    private final Set<HashFunction> extraDigests;
+    private final Map<String, File> extractedData = new HashMap<>();
+    private Workspace workspace;
+    private CompletableFuture<String> extraction;
+    private final Map<String, Map<HashFunction, String>> outputDigests = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final List<File> sharedLibraries = new ArrayList<>();
 
     public PostProcessors(InstallV1 profile, boolean isClient, ProgressCallback monitor) {
         this.profile = profile;
@@ -59,6 +81,16 @@ public class PostProcessors {
         this.processors = profile.getProcessors(isClient ? "client" : "server");
         this.hasTasks = !this.processors.isEmpty();
         this.data = profile.getData(isClient);
+        this.extraDigests = InstallRequest.current().getDigests();
+    }
+
+    /**
+     * Before running a processor, look for its outputs in these library directories of other installs. When all of
+     * them are found with the expected hashes, they are copied over and the processor is skipped.
+     */
+    public PostProcessors shareOutputsFrom(Collection<File> librariesDirs) {
+        sharedLibraries.addAll(librariesDirs);
+        return this;
     }
 
     public Library[] getLibraries() {
@@ -73,31 +105,47 @@ public class PostProcessors {
     }
 
     public boolean process(File librariesDir, File minecraft, File root, File installer) {
+        return process(librariesDir, minecraft, root, installer, null);
+    }
+
+    /**
+     * @param downloads if not {@code null}, libraries still being downloaded; each processor then waits only for the
+     *                  libraries it reads before running
+     */
+    public boolean process(File librariesDir, File minecraft, File root, File installer, @Nullable LibraryDownloads downloads) {
+        return monitor.phase("processors", () -> runProcessors(librariesDir, minecraft, root, installer, downloads));
+    }
+
+    private boolean runProcessors(File librariesDir, File minecraft, File root, File installer, @Nullable LibraryDownloads downloads) {
+        // Processors can declare several large outputs, hash them side by side and join before deciding anything.
+        ExecutorService hashPool = newPool("Installer-Hasher-", HASH_THREADS);
+        String running = null; // The processor being run, to report it as failed on an early return
+        long started = 0;
+        FlightRecorderEvents.Span span = FlightRecorderEvents.Span.NOOP;
         try {
+            Map<String, File> artifactData = new HashMap<>();
             if (!data.isEmpty()) {
-                StringBuilder err = new StringBuilder();
-                Path temp = Files.createTempDirectory("neoforge_installer");
-                monitor.start("Created Temporary Directory: " + temp);
+                Map<String, File> extracted = startDataExtraction();
                 double steps = data.size();
                 int progress = 1;
                 for (String key : data.keySet()) {
                     monitor.getGlobalProgress().percentageProgress(progress++ / steps);
                     String value = data.get(key);
 
-                    if (value.charAt(0) == '[' && value.charAt(value.length() - 1) == ']') { //Artifact
-                        data.put(key, Artifact.from(value.substring(1, value.length() - 1)).getLocalPath(librariesDir).getAbsolutePath());
+                    if (extracted.containsKey(key)) {
+                        data.put(key, extracted.get(key).getAbsolutePath());
+                    } else if (value.charAt(0) == '[' && value.charAt(value.length() - 1) == ']') { //Artifact
+                        File artifact = Artifact.from(value.substring(1, value.length() - 1)).getLocalPath(librariesDir);
+                        artifactData.put(key, artifact);
+                        data.put(key, artifact.getAbsolutePath());
                     } else if (value.charAt(0) == '\'' && value.charAt(value.length() - 1) == '\'') { //Literal
                         data.put(key, value.substring(1, value.length() - 1));
-                    } else {
-                        File target = Paths.get(temp.toString(), value).toFile();
-                        monitor.message("  Extracting: " + value);
-                        if (!DownloadUtils.extractFile(value, target))
-                            err.append("\n  ").append(value);
-                        data.put(key, target.getAbsolutePath());
                     }
                 }
-                if (err.length() > 0) {
-                    error("Failed to extract files from archive: " + err.toString());
+
+                String err = extraction.join();
+                if (!err.isEmpty()) {
+                    error("Failed to extract files from archive: " + err);
                     return false;
                 }
             }
@@ -126,11 +174,13 @@ public class PostProcessors {
             for (Processor proc : processors) {
                 log("===============================================================================");
                 String procName = proc.getJar().getDomain() + ":" + proc.getJar().getName();
+                String task = null;
                 if (proc.getJar().getName().equals("installertools")) {
-                    String task = proc.getArgs()[Arrays.asList(proc.getArgs()).indexOf("--task") + 1];
+                    task = proc.getArgs()[Arrays.asList(proc.getArgs()).indexOf("--task") + 1];
                     procName += (" -> " + task);
                     if (task.equals("DOWNLOAD_MOJMAPS") && mojmapsSuccess) {
                         monitor.message("Skipping mojmaps download due to local cache hit.");
+                        monitor.cacheHit("processor", procName);
                         monitor.getGlobalProgress().progress(++progress);
                         continue;
                     }
@@ -138,7 +188,7 @@ public class PostProcessors {
 
                 monitor.setCurrentStep("Processor: " + procName);
 
-                Map<String, String> outputs = new HashMap<>();
+                Map<String, String> outputs = new LinkedHashMap<>();
                 if (!proc.getOutputs().isEmpty()) {
                     boolean miss = false;
                     log("  Cache: ");
@@ -159,29 +209,57 @@ public class PostProcessors {
                         }
 
                         outputs.put(key, value);
-                        File artifact = new File(key);
-                        if (!artifact.exists()) {
+                    }
+
+                    Map<String, String> hashes = hashOutputs(outputs.keySet(), hashPool);
+                    for (Entry<String, String> e : outputs.entrySet()) {
+                        String key = e.getKey();
+                        String value = e.getValue();
+                        if (!hashes.containsKey(key)) {
                             log("    " + key + " Missing");
                             miss = true;
                         } else {
-                            String sha = DownloadUtils.getSha1(artifact);
-                            if (sha.equals(value)) {
+                            String sha = hashes.get(key);
+                            if (value.equals(sha)) {
                                 log("    " + key + " Validated: " + value);
+                                logDigests(key);
                             } else {
                                 log("    " + key);
                                 log("      Expected: " + value);
                                 log("      Actual:   " + sha);
                                 miss = true;
-                                artifact.delete();
+                                new File(key).delete();
                             }
                         }
                     }
                     if (!miss) {
                         log("  Cache Hit!");
+                        monitor.cacheHit("processor", procName);
                         continue;
                     }
+                    if (reuseOutputs(librariesDir, outputs, hashes)) {
+                        log("  Shared Cache Hit!");
+                        monitor.cacheHit("shared_processor", procName);
+                        continue;
+                    }
+                }
+
+                if (workspace != null) {
+                    Path moved = workspace.ensureHeadroom();
+                    if (moved != null)
+                        data.replaceAll((k, v) -> workspace.relocate(moved, v));
+                }
+
+                if (downloads != null && !downloads.await(getInputs(proc, librariesDir, artifactData, minecraft))) {
+                    log("  Failed to download the files this processor needs");
+                    return false;
                 }
 
+                running = procName;
+                started = System.nanoTime();
+                monitor.processorStarted(procName);
+                span = FlightRecorderEvents.processor(proc.getJar().getDomain() + ":" + proc.getJar().getName(), task);
+
                 File jar = proc.getJar().getLocalPath(librariesDir);
                 if (!jar.exists() || !jar.isFile()) {
                     error("  Missing Jar for processor: " + jar.getAbsolutePath());
@@ -267,19 +345,20 @@ public class PostProcessors {
                 }
 
                 if (!outputs.isEmpty()) {
+                    Map<String, String> hashes = hashOutputs(outputs.keySet(), hashPool);
                     for (Entry<String, String> e : outputs.entrySet()) {
-                        File artifact = new File(e.getKey());
-                        if (!artifact.exists()) {
+                        if (!hashes.containsKey(e.getKey())) {
                             err.append("\n    ").append(e.getKey()).append(" missing");
                         } else {
-                            String sha = DownloadUtils.getSha1(artifact);
-                            if (sha.equals(e.getValue())) {
+                            String sha = hashes.get(e.getKey());
+                            if (e.getValue().equals(sha)) {
                                 log("  Output: " + e.getKey() + " Checksum Validated: " + sha);
+                                logDigests(e.getKey());
                             } else {
                                 err.append("\n    ").append(e.getKey())
                                         .append("\n      Expected: ").append(e.getValue())
                                         .append("\n      Actual:   ").append(sha);
-                                if (!SimpleInstaller.debug && !artifact.delete())
+                                if (!InstallRequest.current().isDebug() && !new File(e.getKey()).delete())
                                     err.append("\n      Could not delete file");
                             }
                         }
@@ -290,6 +369,10 @@ public class PostProcessors {
                     }
                 }
 
+                monitor.processorFinished(procName, System.nanoTime() - started, true);
+                span.success(true);
+                span.close();
+                running = null;
                 monitor.getGlobalProgress().progress(++progress);
             }
 
@@ -297,11 +380,243 @@ public class PostProcessors {
         } catch (IOException e) {
             e.printStackTrace();
             return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // Let the action notice it was canceled
+            return false;
+        } finally {
+            if (running != null) {
+                monitor.processorFinished(running, System.nanoTime() - started, false);
+                span.close();
+            }
+            hashPool.shutdownNow();
+        }
+    }
+
+    /**
+     * The libraries the processors run from, in the order the processors need them: each processor's jar, classpath,
+     * and the artifacts passed to it directly as arguments.
+     */
+    public List<File> getCriticalLibraries(File librariesDir) {
+        Set<File> ret = new LinkedHashSet<>();
+        for (Processor proc : processors) {
+            for (File file : getInputs(proc, librariesDir, Collections.emptyMap(), null))
+                ret.add(file.getAbsoluteFile());
+        }
+        return new ArrayList<>(ret);
+    }
+
+    // The files a processor reads: its jar, classpath, the Minecraft jar, and any artifact passed as an argument directly or as data
+    private static List<File> getInputs(Processor proc, File librariesDir, Map<String, File> artifactData, @Nullable File minecraft) {
+        List<File> inputs = new ArrayList<>();
+        inputs.add(proc.getJar().getLocalPath(librariesDir));
+        for (Artifact dep : proc.getClasspath())
+            inputs.add(dep.getLocalPath(librariesDir));
+        for (String arg : proc.getArgs()) {
+            char start = arg.charAt(0);
+            char end = arg.charAt(arg.length() - 1);
+            if (start == '[' && end == ']')
+                inputs.add(Artifact.from(arg.substring(1, arg.length() - 1)).getLocalPath(librariesDir));
+            else if (start == '{' && end == '}' && artifactData.containsKey(arg.substring(1, arg.length() - 1)))
+                inputs.add(artifactData.get(arg.substring(1, arg.length() - 1)));
+            if (minecraft != null && arg.contains("{MINECRAFT_JAR}"))
+                inputs.add(minecraft);
+        }
+        return inputs;
+    }
+
+    /**
+     * Starts extracting the data files the processors need from the installer archive into the temporary workspace.
+     * The files don't depend on any library, so this can run while libraries are downloading; {@link #process} waits
+     * for it to finish. Calling this more than once has no further effect.
+     *
+     * @return the file each extracted data entry will be written to
+     */
+    public synchronized Map<String, File> startDataExtraction() throws IOException {
+        if (extraction != null)
+            return extractedData;
+
+        long began = System.nanoTime();
+        monitor.phaseStarted("data_extraction");
+        Map<String, String> pending = new HashMap<>();
+        long expected = 0;
+        for (Entry<String, String> e : data.entrySet()) {
+            String value = e.getValue();
+            char start = value.charAt(0);
+            char end = value.charAt(value.length() - 1);
+            if ((start == '[' && end == ']') || (start == '\'' && end == '\''))
+                continue;
+            pending.put(e.getKey(), value);
+            expected += Math.max(0, InstallRequest.current().getArchive().getSize(value));
+        }
+
+        Map<String, CompletableFuture<String>> files = new HashMap<>();
+        ExecutorService pool = null;
+        for (Entry<String, String> e : pending.entrySet()) {
+            String value = e.getValue();
+            File target = getWorkspace(expected).getRoot().resolve(value.charAt(0) == '/' ? value.substring(1) : value).toFile();
+            extractedData.put(e.getKey(), target);
+            if (files.containsKey(value))
+                continue;
+
+            if (pool == null)
+                pool = newPool("Installer-Extractor-", EXTRACT_THREADS);
+            monitor.message("  Extracting: " + value);
+            files.put(value, CompletableFuture.supplyAsync(() -> extract(value, target), pool));
+        }
+
+        if (pool != null)
+            pool.shutdown(); // Already submitted tasks still run, this just lets the threads go once they are done
+        extraction = CompletableFuture.allOf(files.values().toArray(new CompletableFuture[0]))
+                .thenApply(v -> files.values().stream().map(CompletableFuture::join).collect(Collectors.joining()));
+        extraction.thenAccept(err -> monitor.phaseFinished("data_extraction", System.nanoTime() - began, err.isEmpty()));
+        return extractedData;
+    }
+
+    // Extracts a single data file, returning the error line if it failed
+    private String extract(String entry, File target) {
+        long start = System.nanoTime();
+        boolean success = DownloadUtils.extractFile(entry, target);
+        monitor.fileExtracted(entry, target, System.nanoTime() - start, success);
+        return success ? "" : "\n  " + entry;
+    }
+
+    private Workspace getWorkspace(long expected) throws IOException {
+        if (workspace == null)
+            workspace = Workspace.create(InstallRequest.current().getWorkDir(), expected, monitor);
+        return workspace;
+    }
+
+    /**
+     * Deletes the temporary workspace, unless running in debug mode.
+     */
+    public synchronized void cleanup() {
+        if (workspace == null)
+            return;
+        if (extraction != null)
+            extraction.join();
+        if (InstallRequest.current().isDebug()) {
+            monitor.message("Debug mode, keeping temporary directory: " + workspace.getRoot());
+            return;
+        }
+        try {
+            workspace.delete();
+            monitor.message("Deleted temporary directory: " + workspace.getRoot());
+        } catch (IOException e) {
+            monitor.message("Failed to delete temporary directory " + workspace.getRoot() + ": " + e);
+        }
+        workspace = null;
+        extraction = null;
+        extractedData.clear();
+    }
+
+    static ExecutorService newPool(String name, int max) {
+        return newThreadPool(name, Math.max(1, Math.min(max, Runtime.getRuntime().availableProcessors())));
+    }
+
+    // Unlike newPool, not limited to the processor count, for work that mostly waits on the network.
+    // The threads work for the install creating the pool, so they run with its request.
+    static ExecutorService newThreadPool(String name, int threads) {
+        AtomicInteger count = new AtomicInteger();
+        InstallRequest request = InstallRequest.current();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(request.wrap(r), name + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Copies the outputs that are missing from the library directories of other installs, if all of them are there
+    private boolean reuseOutputs(File librariesDir, Map<String, String> outputs, Map<String, String> hashes) {
+        if (sharedLibraries.isEmpty())
+            return false;
+
+        Path root = librariesDir.getAbsoluteFile().toPath();
+        Map<Path, Path> found = new LinkedHashMap<>();
+        for (Entry<String, String> e : outputs.entrySet()) {
+            if (e.getValue().equals(hashes.get(e.getKey())))
+                continue;
+            Path target = new File(e.getKey()).getAbsoluteFile().toPath();
+            if (!target.startsWith(root))
+                return false;
+            Path relative = root.relativize(target);
+            Path source = null;
+            for (File dir : sharedLibraries) {
+                File candidate = new File(dir, relative.toString());
+                if (candidate.isFile() && e.getValue().equals(DownloadUtils.getSha1(candidate))) {
+                    source = candidate.toPath();
+                    break;
+                }
+            }
+            if (source == null)
+                return false;
+            found.put(source, target);
+        }
+
+        for (Entry<Path, Path> e : found.entrySet()) {
+            try {
+                Files.createDirectories(e.getValue().getParent());
+                IOUtils.copy(e.getKey(), e.getValue());
+            } catch (IOException ex) {
+                log("    Failed to copy " + e.getKey() + ": " + ex);
+                return false;
+            }
+            if (!extraDigests.isEmpty()) {
+                hashOutput(e.getValue().toFile());
+                logDigests(e.getValue().toString());
+            }
+            log("    " + e.getValue() + " Copied from " + e.getKey());
+        }
+        return true;
+    }
+
+    /**
+     * Hashes every output that exists, returning the SHA-1 of each keyed by path. Missing outputs are left out.
+     */
+    private Map<String, String> hashOutputs(Collection<String> paths, ExecutorService pool) {
+        Map<String, CompletableFuture<String>> futures = new LinkedHashMap<>();
+        for (String path : paths) {
+            File artifact = new File(path);
+            if (artifact.exists())
+                futures.put(path, CompletableFuture.supplyAsync(() -> hashOutput(artifact), pool));
+        }
+
+        Map<String, String> ret = new HashMap<>();
+        for (Entry<String, CompletableFuture<String>> e : futures.entrySet())
+            ret.put(e.getKey(), e.getValue().join());
+        return ret;
+    }
+
+    // Reports the extra digests of a verified output
+    private void logDigests(String path) {
+        File artifact = new File(path);
+        Map<HashFunction, String> hashes = outputDigests.get(artifact.getAbsolutePath());
+        if (hashes == null)
+            return;
+        monitor.fileDigested(artifact, hashes);
+        for (HashFunction func : extraDigests)
+            monitor.message("    " + func.name() + ": " + hashes.get(func), MessagePriority.LOW);
+    }
+
+    // Hashes an output once for the SHA-1 check and any extra digests requested
+    private String hashOutput(File artifact) {
+        long start = System.nanoTime();
+        try {
+            if (extraDigests.isEmpty())
+                return DownloadUtils.getSha1(artifact);
+            EnumSet<HashFunction> functions = EnumSet.copyOf(extraDigests);
+            functions.add(HashFunction.SHA1);
+            Map<HashFunction, String> hashes = DownloadUtils.getHashes(artifact, functions);
+            if (hashes == null)
+                return null;
+            outputDigests.put(artifact.getAbsolutePath(), hashes);
+            return hashes.get(HashFunction.SHA1);
+        } finally {
+            monitor.fileHashed(artifact, artifact.length(), System.nanoTime() - start);
         }
     }
 
     private void error(String message) {
-        if (!SimpleInstaller.headless)
+        if (!InstallRequest.current().isHeadless())
             JOptionPane.showMessageDialog(null, message, "Error", JOptionPane.ERROR_MESSAGE);
         for (String line : message.split("\n"))
             monitor.message(line);
@@ -312,22 +627,28 @@ public class PostProcessors {
             monitor.message(line);
     }
 
-    private static boolean clChecked = false;
-    private static ClassLoader parentClassLoader = null;
-
     @SuppressWarnings("unused")
-    private synchronized ClassLoader getParentClassloader() { //Reflectively try and get the platform classloader, done this way to prevent hard dep on J9.
-        if (!clChecked) {
-            clChecked = true;
-            if (!System.getProperty("java.version").startsWith("1.")) { //in 9+ the changed from 1.8 to just 9. So this essentially detects if we're <9
-                try {
-                    Method getPlatform = ClassLoader.class.getDeclaredMethod("getPlatformClassLoader");
-                    parentClassLoader = (ClassLoader) getPlatform.invoke(null);
-                } catch (NoSuchMethodException | IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
-                    log("No platform classloader: " + System.getProperty("java.version"));
-                }
+    private ClassLoader getParentClassloader() { //Reflectively try and get the platform classloader, done this way to prevent hard dep on J9.
+        if (PlatformClassLoader.INSTANCE == null && !System.getProperty("java.version").startsWith("1."))
+            log("No platform classloader: " + System.getProperty("java.version"));
+        return PlatformClassLoader.INSTANCE;
+    }
+
+    // The same for every install, so looked up once, when first needed
+    private static class PlatformClassLoader {
+        @Nullable
+        private static final ClassLoader INSTANCE = find();
+
+        @Nullable
+        private static ClassLoader find() {
+            if (System.getProperty("java.version").startsWith("1.")) //in 9+ the changed from 1.8 to just 9. So this essentially detects if we're <9
+                return null;
+            try {
+                Method getPlatform = ClassLoader.class.getDeclaredMethod("getPlatformClassLoader");
+                return (ClassLoader) getPlatform.invoke(null);
+            } catch (NoSuchMethodException | IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
+                return null;
             }
         }
-        return parentClassLoader;
     }
 }
@@ -15,12 +15,17 @@
  */
 package net.minecraftforge.installer.actions;
 
+import java.io.File;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URLConnection;
+import java.util.Map;
 import net.minecraftforge.installer.Downloader;
+import net.minecraftforge.installer.HashFunction;
+import net.minecraftforge.installer.InstallRequest;
+import org.jetbrains.annotations.Nullable;
 
 public interface ProgressCallback {
     enum MessagePriority {
@@ -171,63 +176,88 @@ public interface ProgressCallback {
     }
 
     default ProgressCallback withoutDownloadProgress() {
-        final ProgressCallback self = this;
-        return new ProgressCallback() {
+        return new DelegatingProgressCallback(this) {
             @Override
-            public void start(String label) {
-                self.start(label);
+            public InputStream wrapStepDownload(URLConnection connection) throws IOException {
+                return connection.getInputStream();
             }
 
             @Override
-            public void stage(String message, boolean withProgress) {
-                self.stage(message, withProgress);
+            public InputStream wrapStepDownload(InputStream in) {
+                return in;
             }
+        };
+    }
 
-            @Override
-            public void stage(String message) {
-                self.stage(message);
-            }
+    /*
+     * Structured events about the install, for tools that follow its progress. Unlike the messages they are not
+     * meant to be read by people, so they are ignored by default. Events may be sent from any thread.
+     */
 
-            @Override
-            public void message(String message) {
-                self.message(message);
-            }
+    default void phaseStarted(String phase) {}
 
-            @Override
-            public ProgressBar getGlobalProgress() {
-                return self.getGlobalProgress();
-            }
+    default void phaseFinished(String phase, long nanos, boolean success) {}
 
-            @Override
-            public ProgressBar getStepProgress() {
-                return self.getStepProgress();
-            }
+    default void downloadStarted(String url, File target) {}
 
-            @Override
-            public InputStream wrapStepDownload(URLConnection connection) throws IOException {
-                return connection.getInputStream();
-            }
+    /**
+     * @param source where the file came from, {@code null} if the download failed
+     * @param bytes  the size of the file, {@code 0} if the download failed
+     */
+    default void downloadFinished(String url, File target, @Nullable DownloadSource source, long bytes, long nanos, boolean success) {}
 
-            @Override
-            public InputStream wrapStepDownload(InputStream in) {
-                return in;
-            }
+    default void processorStarted(String processor) {}
 
-            @Override
-            public void message(String message, MessagePriority priority) {
-                self.message(message, priority);
-            }
+    default void processorFinished(String processor, long nanos, boolean success) {}
 
-            @Override
-            public void setCurrentStep(String step) {
-                self.setCurrentStep(step);
-            }
+    default void fileHashed(File file, long bytes, long nanos) {}
 
-            @Override
-            public String getCurrentStep() {
-                return self.getCurrentStep();
-            }
-        };
+    /**
+     * @param entry the entry of the installer archive that was extracted
+     */
+    default void fileExtracted(String entry, File target, long nanos, boolean success) {}
+
+    /**
+     * The extra digests requested with {@link InstallRequest#digest} of a downloaded or verified file, with its SHA-1.
+     */
+    default void fileDigested(File file, Map<HashFunction, String> digests) {}
+
+    /**
+     * Some work was skipped because its result already exists, like the outputs of a processor.
+     */
+    default void cacheHit(String kind, String key) {}
+
+    /**
+     * Runs part of the install as a phase, sending its start and end events. The phase fails if it throws or returns
+     * {@code false} or {@code null}.
+     */
+    default <T, E extends Exception> T phase(String phase, PhaseBody<T, E> body) throws E {
+        long start = System.nanoTime();
+        phaseStarted(phase);
+        T ret = null;
+        try {
+            ret = body.run();
+            return ret;
+        } finally {
+            phaseFinished(phase, System.nanoTime() - start, ret != null && !Boolean.FALSE.equals(ret));
+        }
+    }
+
+    @FunctionalInterface
+    interface PhaseBody<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    enum DownloadSource {
+        /**
+         * The file was already at its target with the expected checksum
+         */
+        CACHE,
+        /**
+         * Copied from a local directory, the installer archive or another install
+         */
+        LOCAL,
+        NETWORK
     }
 
     interface ProgressBar {
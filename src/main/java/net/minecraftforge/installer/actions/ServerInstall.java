@@ -16,12 +16,14 @@
 package net.minecraftforge.installer.actions;
 
 import java.io.File;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Predicate;
 import net.minecraftforge.installer.DownloadUtils;
+import net.minecraftforge.installer.InstallRequest;
 import net.minecraftforge.installer.SimpleInstaller;
 import net.minecraftforge.installer.json.Artifact;
 import net.minecraftforge.installer.json.InstallV1;
@@ -31,7 +33,10 @@ import net.minecraftforge.installer.json.Version.Download;
 import net.minecraftforge.installer.ui.TranslatedMessage;
 
 public class ServerInstall extends Action {
-    public static boolean serverStarterJar;
+    /**
+     * The files of an installed server that are never written to, and so may be shared between servers.
+     */
+    static final Predicate<Path> IMMUTABLE = path -> path.startsWith("libraries");
 
     private final List<Artifact> grabbed = new ArrayList<>();
 
@@ -41,6 +46,50 @@ public class ServerInstall extends Action {
 
     @Override
     public boolean run(File target, Predicate<String> optionals, File installer) throws ActionCanceledException {
+        try {
+            return install(target, optionals, installer);
+        } finally {
+            processors.cleanup();
+        }
+    }
+
+    /**
+     * Installs the server into every target directory, one after the other.
+     * <p>
+     * Every target gets an install of its own, so the processors see its real path as {@code ROOT}. The later ones take
+     * the libraries, the Minecraft server jar and the processor outputs from the targets before them, verified by
+     * their SHA-1, so nothing is downloaded or built twice.
+     */
+    public boolean run(List<File> targets, Predicate<String> optionals, File installer) throws ActionCanceledException {
+        if (targets.size() == 1)
+            return run(targets.get(0), optionals, installer);
+
+        for (File target : targets) {
+            if (target.exists() && !target.isDirectory()) {
+                error("There is a file at " + target + ", the server cannot be installed there!");
+                return false;
+            }
+        }
+
+        List<File> installed = new ArrayList<>();
+        for (File target : targets) {
+            checkCancel();
+            monitor.stage("Installing server into " + target);
+            // Each install needs processors of its own
+            ServerInstall action = this;
+            if (!installed.isEmpty()) {
+                action = new ServerInstall(profile, monitor);
+                action.shareLibrariesFrom(sharedLibraries);
+                action.shareLibrariesFrom(installed);
+            }
+            if (!action.run(target, optionals, installer))
+                return false;
+            installed.add(new File(target, "libraries"));
+        }
+        return true;
+    }
+
+    private boolean install(File target, Predicate<String> optionals, File installer) throws ActionCanceledException {
         if (target.exists() && !target.isDirectory()) {
             error("There is a file at this location, the server cannot be installed here!");
             return false;
@@ -54,7 +103,7 @@ public class ServerInstall extends Action {
             monitor.stage(getSponsorMessage());
         checkCancel();
 
-        //Download MC Server jar
+        //Download MC Server jar, in the background while libraries download
         monitor.stage("Considering Minecraft server jar", true);
         Map<String, String> tokens = new HashMap<>();
         tokens.put("ROOT", target.getAbsolutePath());
@@ -63,52 +112,19 @@ public class ServerInstall extends Action {
 
         String path = Util.replaceTokens(tokens, profile.getServerJarPath());
         File serverTarget = new File(path);
-        if (!serverTarget.exists()) {
-            File parent = serverTarget.getParentFile();
-            if (!parent.exists()) {
-                parent.mkdirs();
-            }
-
-            File versionJson = new File(target, profile.getMinecraft() + ".json");
-            Version vanilla = Util.getVanillaVersion(monitor, profile.getMinecraft(), versionJson);
-            if (vanilla == null) {
-                error("Failed to download version manifest, can not find server jar URL.");
-                return false;
-            }
-            Download server = vanilla.getDownload("server");
-            if (server == null) {
-                error("Failed to download minecraft server, info missing from manifest: " + versionJson);
-                return false;
-            }
-
-            versionJson.delete();
-
-            if (!monitor.downloader(server.getUrl())
-                    .sha(server.getSha1())
-                    .localPath("minecraft/" + profile.getMinecraft() + "/server.jar")
-                    .download(serverTarget)) {
-                serverTarget.delete();
-                error("Downloading minecraft server failed, invalid checksum.\n" +
-                        "Try again, or manually place server jar to skip download.");
-                return false;
-            }
-        }
         checkCancel();
 
-        // Download Libraries
+        // Download Libraries and run the processors
         List<File> libDirs = new ArrayList<>();
         File mcLibDir = new File(SimpleInstaller.getMCDir(), "libraries");
         if (mcLibDir.exists()) {
             libDirs.add(mcLibDir);
         }
-        if (!downloadLibraries(librariesDir, optionals, libDirs))
-            return false;
-
-        checkCancel();
-        if (!processors.process(librariesDir, serverTarget, target, installer))
+        Stage serverJar = runAsync("Minecraft", () -> monitor.phase("minecraft_jar", () -> downloadServer(target, serverTarget)));
+        if (!downloadAndProcess(librariesDir, optionals, libDirs, serverTarget, serverJar, target, installer))
             return false;
 
-        if (serverStarterJar) {
+        if (InstallRequest.current().isServerStarterJar()) {
             monitor.downloader(DownloadUtils.SERVER_STARTER_JAR)
                     .localPath("serverstarter.jar")
                     .download(new File(target, "server.jar"));
@@ -117,6 +133,53 @@ public class ServerInstall extends Action {
         return true;
     }
 
+    private boolean downloadServer(File target, File serverTarget) {
+        if (serverTarget.exists())
+            return true;
+
+        File parent = serverTarget.getParentFile();
+        if (!parent.exists()) {
+            parent.mkdirs();
+        }
+
+        File versionJson = new File(target, profile.getMinecraft() + ".json");
+        Version vanilla = Util.getVanillaVersion(monitor, profile.getMinecraft(), versionJson);
+        if (vanilla == null) {
+            error("Failed to download version manifest, can not find server jar URL.");
+            return false;
+        }
+        Download server = vanilla.getDownload("server");
+        if (server == null) {
+            error("Failed to download minecraft server, info missing from manifest: " + versionJson);
+            return false;
+        }
+
+        versionJson.delete();
+
+        // The same jar in other installs sharing their libraries
+        Path libraries = new File(target, "libraries").getAbsoluteFile().toPath();
+        Path jar = serverTarget.getAbsoluteFile().toPath();
+        List<File> shared = new ArrayList<>();
+        if (jar.startsWith(libraries)) {
+            for (File dir : sharedLibraries)
+                shared.add(new File(dir, libraries.relativize(jar).toString()));
+        }
+
+        // The step progress belongs to the library downloads running alongside
+        if (!monitor.withoutDownloadProgress().downloader(server.getUrl())
+                .sha(server.getSha1())
+                .size(server.getSize())
+                .localPath("minecraft/" + profile.getMinecraft() + "/server.jar")
+                .alternatives(shared.toArray(new File[0]))
+                .download(serverTarget)) {
+            serverTarget.delete();
+            error("Downloading minecraft server failed, invalid checksum.\n" +
+                    "Try again, or manually place server jar to skip download.");
+            return false;
+        }
+        return true;
+    }
+
     @Override
     public TargetValidator getTargetValidator() {
         return TargetValidator.shouldExist(false)
@@ -0,0 +1,113 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package net.minecraftforge.installer.actions;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import net.minecraftforge.installer.FileLocks;
+import net.minecraftforge.installer.HashFunction;
+
+/**
+ * A fully installed server directory sealed with a manifest of its files, from which new servers are cloned without
+ * running the installer again.
+ * <p>
+ * The manifest lists the SHA-1 and path of every file in the {@code sha1sum} format, so a template can also be checked
+ * by hand. Clones hard link the libraries and copy everything else. Copies are checked against the manifest hashes;
+ * linked files share their data with the template, so they are only checked to be no newer than the manifest, which
+ * keeps cloning fast.
+ */
+public class ServerTemplate {
+    public static final String MANIFEST = ".installer-template.sha1";
+
+    /**
+     * Writes the manifest of an installed server, turning it into a template.
+     *
+     * @return the number of files in the manifest
+     */
+    public static int seal(Path dir) throws IOException {
+        List<String> lines = new ArrayList<>();
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path sub, BasicFileAttributes attrs) {
+                return FileLocks.isLockDir(sub) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                String relative = dir.relativize(file).toString().replace('\\', '/');
+                if (!relative.equals(MANIFEST))
+                    lines.add(HashFunction.SHA1.hash(file) + "  " + relative);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        lines.sort(null);
+
+        Path manifest = dir.resolve(MANIFEST);
+        Path temp = dir.resolve(MANIFEST + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        }
+        Files.move(temp, manifest, StandardCopyOption.REPLACE_EXISTING);
+        return lines.size();
+    }
+
+    /**
+     * Stamps a new server from the template into {@code target}. Files already in the target that the template
+     * doesn't have are kept.
+     */
+    public static void clone(Path template, Path target, ProgressCallback monitor) throws IOException {
+        Path manifest = template.resolve(MANIFEST);
+        if (!Files.isRegularFile(manifest))
+            throw new IOException(template + " is not a server template, it has no " + MANIFEST);
+
+        FileTime sealed = Files.getLastModifiedTime(manifest);
+        DirectoryCopier copier = new DirectoryCopier();
+        for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+            if (line.isEmpty())
+                continue;
+            int split = line.indexOf("  ");
+            if (split == -1)
+                throw new IOException("Invalid manifest line: " + line);
+            String sha1 = line.substring(0, split);
+            Path relative = template.getFileSystem().getPath(line.substring(split + 2));
+            Path source = template.resolve(relative);
+            Path dest = target.resolve(relative.toString());
+
+            Files.createDirectories(dest.getParent());
+            if (copier.copyFile(source, dest, ServerInstall.IMMUTABLE.test(relative))) {
+                if (Files.getLastModifiedTime(source).compareTo(sealed) > 0)
+                    throw new IOException("Template file " + source + " was changed after the template was sealed");
+            } else {
+                if (!sha1.equals(HashFunction.SHA1.hash(dest)))
+                    throw new IOException("Cloned file " + dest + " does not match the template manifest");
+            }
+        }
+        monitor.message("Linked " + copier.getLinked() + " files and copied " + copier.getCopied() + " files from template " + template);
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package net.minecraftforge.installer.actions;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Records the install as a timeline in the Chrome trace event format, which about:tracing and Perfetto can open.
+ * <p>
+ * Every download, hash, extraction and processor is a span on the track of the thread that did it, so the tracks show
+ * what each worker was doing and when it sat idle. Phases are spans on the thread that ran them, so the work they
+ * contain nests under them. Phases that end on another thread than they started on, like the library downloads, are
+ * shown on their own rows instead.
+ */
+public class TraceCallback extends DelegatingProgressCallback {
+    private static final int PID = 1;
+
+    private final long origin = System.nanoTime();
+    private final JsonArray events = new JsonArray();
+    private final Set<Long> named = new HashSet<>();
+    // The threads phases started on, to tell whether they end on the same one
+    private final Map<String, Deque<Long>> phaseThreads = new HashMap<>();
+    private int asyncIds = 0;
+
+    public TraceCallback(ProgressCallback delegate) {
+        super(delegate);
+    }
+
+    @Override
+    public void phaseStarted(String phase) {
+        synchronized (this) {
+            phaseThreads.computeIfAbsent(phase, k -> new ArrayDeque<>()).push(Thread.currentThread().getId());
+        }
+        super.phaseStarted(phase);
+    }
+
+    @Override
+    public void phaseFinished(String phase, long nanos, boolean success) {
+        long end = System.nanoTime();
+        long thread = Thread.currentThread().getId();
+        synchronized (this) {
+            Deque<Long> started = phaseThreads.get(phase);
+            Long from = started == null ? null : started.poll();
+            JsonObject args = new JsonObject();
+            args.addProperty("success", success);
+            if (from == null || from == thread) {
+                span("phase", phase, end - nanos, end, args);
+            } else {
+                int id = ++asyncIds;
+                async("b", phase, id, end - nanos, args, from);
+                async("e", phase, id, end, null, thread);
+            }
+        }
+        super.phaseFinished(phase, nanos, success);
+    }
+
+    @Override
+    public void downloadFinished(String url, File target, @Nullable DownloadSource source, long bytes, long nanos, boolean success) {
+        long end = System.nanoTime();
+        JsonObject args = new JsonObject();
+        args.addProperty("url", url);
+        if (source != null)
+            args.addProperty("source", source.name().toLowerCase(Locale.ROOT));
+        args.addProperty("bytes", bytes);
+        args.addProperty("success", success);
+        synchronized (this) {
+            span("download", target.getName(), end - nanos, end, args);
+        }
+        super.downloadFinished(url, target, source, bytes, nanos, success);
+    }
+
+    @Override
+    public void processorFinished(String processor, long nanos, boolean success) {
+        long end = System.nanoTime();
+        JsonObject args = new JsonObject();
+        args.addProperty("success", success);
+        synchronized (this) {
+            span("processor", processor, end - nanos, end, args);
+        }
+        super.processorFinished(processor, nanos, success);
+    }
+
+    @Override
+    public void fileHashed(File file, long bytes, long nanos) {
+        long end = System.nanoTime();
+        JsonObject args = new JsonObject();
+        args.addProperty("file", file.getAbsolutePath());
+        args.addProperty("bytes", bytes);
+        synchronized (this) {
+            span("hash", "hash " + file.getName(), end - nanos, end, args);
+        }
+        super.fileHashed(file, bytes, nanos);
+    }
+
+    @Override
+    public void fileExtracted(String entry, File target, long nanos, boolean success) {
+        long end = System.nanoTime();
+        JsonObject args = new JsonObject();
+        args.addProperty("file", target.getAbsolutePath());
+        args.addProperty("success", success);
+        synchronized (this) {
+            span("extract", entry, end - nanos, end, args);
+        }
+        super.fileExtracted(entry, target, nanos, success);
+    }
+
+    @Override
+    public void cacheHit(String kind, String key) {
+        long now = System.nanoTime();
+        synchronized (this) {
+            JsonObject event = event("i", "cache_hit", kind + " " + key, now, Thread.currentThread().getId());
+            event.addProperty("s", "t");
+            events.add(event);
+        }
+        super.cacheHit(kind, key);
+    }
+
+    public synchronized void write(File file) throws IOException {
+        JsonObject trace = new JsonObject();
+        trace.add("traceEvents", events);
+        trace.addProperty("displayTimeUnit", "ms");
+        if (file.getAbsoluteFile().getParentFile() != null)
+            file.getAbsoluteFile().getParentFile().mkdirs();
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(trace.toString());
+        }
+    }
+
+    // A complete event on the current thread's track
+    private void span(String category, String name, long start, long end, JsonObject args) {
+        JsonObject event = event("X", category, name, start, Thread.currentThread().getId());
+        event.addProperty("dur", (end - start) / 1000.0);
+        event.add("args", args);
+        events.add(event);
+    }
+
+    private void async(String phase, String name, int id, long time, @Nullable JsonObject args, long thread) {
+        JsonObject event = event(phase, "phase", name, time, thread);
+        event.addProperty("id", id);
+        if (args != null)
+            event.add("args", args);
+        events.add(event);
+    }
+
+    private JsonObject event(String phase, String category, String name, long time, long thread) {
+        if (thread == Thread.currentThread().getId() && named.add(thread)) {
+            // Names the track after the thread, the first time something happens on it
+            JsonObject meta = new JsonObject();
+            meta.addProperty("ph", "M");
+            meta.addProperty("name", "thread_name");
+            meta.addProperty("pid", PID);
+            meta.addProperty("tid", thread);
+            JsonObject args = new JsonObject();
+            args.addProperty("name", Thread.currentThread().getName());
+            meta.add("args", args);
+            events.add(meta);
+        }
+
+        JsonObject event = new JsonObject();
+        event.addProperty("ph", phase);
+        event.addProperty("cat", category);
+        event.addProperty("name", name);
+        event.addProperty("pid", PID);
+        event.addProperty("tid", thread);
+        event.addProperty("ts", (time - origin) / 1000.0);
+        return event;
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package net.minecraftforge.installer.actions;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import net.minecraftforge.installer.IOUtils;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The temporary directory processors read their data files from.
+ * <p>
+ * Unless a directory is given with {@code --work-dir}, the workspace is put on the RAM backed {@code /dev/shm} when
+ * there is comfortably enough free memory for it, otherwise in {@code java.io.tmpdir}. A memory backed workspace is
+ * checked again before every processor runs, and moved to disk if free memory gets close to {@link #RESERVE}.
+ */
+public class Workspace {
+    private static final Path SHM = Paths.get("/dev/shm");
+    private static final Path MEMINFO = Paths.get("/proc/meminfo");
+    // Memory that must stay free for the processors themselves and the rest of the system
+    static final long RESERVE = 512L * 1024 * 1024;
+
+    private final ProgressCallback monitor;
+    private Path root;
+    private boolean memory;
+
+    private Workspace(ProgressCallback monitor, Path root, boolean memory) {
+        this.monitor = monitor;
+        this.root = root;
+        this.memory = memory;
+    }
+
+    /**
+     * @param configured the directory to create the workspace in, or {@code null} to choose automatically
+     * @param expected   how many bytes are expected to be written to the workspace
+     */
+    public static Workspace create(@Nullable File configured, long expected, ProgressCallback monitor) throws IOException {
+        Workspace ret;
+        if (configured != null) {
+            Files.createDirectories(configured.toPath());
+            ret = new Workspace(monitor, Files.createTempDirectory(configured.toPath(), "neoforge_installer"), false);
+        } else if (memoryAvailable() - expected > RESERVE) {
+            ret = new Workspace(monitor, Files.createTempDirectory(SHM, "neoforge_installer"), true);
+        } else {
+            ret = new Workspace(monitor, Files.createTempDirectory("neoforge_installer"), false);
+        }
+        monitor.start("Created Temporary Directory: " + ret.root + (ret.memory ? " (memory backed)" : ""));
+        return ret;
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    public boolean isMemoryBacked() {
+        return memory;
+    }
+
+    /**
+     * Moves a memory backed workspace to disk if free memory is running low.
+     *
+     * @return the previous root if the workspace was moved, {@code null} otherwise
+     */
+    @Nullable
+    public Path ensureHeadroom() throws IOException {
+        if (!memory)
+            return null;
+        long available = memoryAvailable();
+        if (available > RESERVE)
+            return null;
+
+        Path old = root;
+        Path disk = Files.createTempDirectory("neoforge_installer");
+        monitor.message("Free memory is low (" + (available / 1024 / 1024) + " MB), moving temporary directory to " + disk);
+        Files.walkFileTree(old, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(disk.resolve(old.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                IOUtils.copy(file, disk.resolve(old.relativize(file).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        root = disk;
+        memory = false;
+        delete(old);
+        return old;
+    }
+
+    /**
+     * Rewrites a path inside the old workspace root to the current one.
+     */
+    public String relocate(Path oldRoot, String path) {
+        if (!path.startsWith(oldRoot.toString()))
+            return path;
+        Path file = Paths.get(path);
+        return file.startsWith(oldRoot) ? root.resolve(oldRoot.relativize(file).toString()).toAbsolutePath().toString() : path;
+    }
+
+    public void delete() throws IOException {
+        delete(root);
+    }
+
+    static void delete(Path dir) throws IOException {
+        if (!Files.exists(dir))
+            return;
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * How much can still be written to {@code /dev/shm}: the smaller of the free space of the tmpfs mount and the memory
+     * the kernel reports as available. Returns {@code 0} where there is no such mount.
+     */
+    private static long memoryAvailable() {
+        try {
+            if (!Files.isDirectory(SHM) || !Files.isWritable(SHM) || !Files.isReadable(MEMINFO))
+                return 0;
+            long available = -1;
+            for (String line : Files.readAllLines(MEMINFO, StandardCharsets.US_ASCII)) {
+                if (line.startsWith("MemAvailable:")) {
+                    available = Long.parseLong(line.substring(13).replace("kB", "").trim()) * 1024;
+                    break;
+                }
+            }
+            return available < 0 ? 0 : Math.min(available, Files.getFileStore(SHM).getUsableSpace());
+        } catch (IOException | NumberFormatException e) {
+            return 0;
+        }
+    }
+}
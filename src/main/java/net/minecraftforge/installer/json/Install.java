@@ -15,6 +15,7 @@
  */
 package net.minecraftforge.installer.json;
 
+import java.net.URL;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -23,7 +24,7 @@ import java.util.Map.Entry;
 import java.util.Random;
 import java.util.stream.Collectors;
 import net.minecraftforge.installer.DownloadUtils;
-import net.minecraftforge.installer.SimpleInstaller;
+import net.minecraftforge.installer.InstallRequest;
 
 public class Install extends Spec {
     // Profile name to install and direct at this new version
@@ -102,8 +103,9 @@ public class Install extends Spec {
     public Mirror getMirror() {
         if (mirror != null)
             return mirror;
-        if (SimpleInstaller.mirror != null) {
-            mirror = new Mirror("Mirror", "", "", SimpleInstaller.mirror.toString());
+        URL configured = InstallRequest.current().getMirror();
+        if (configured != null) {
+            mirror = new Mirror("Mirror", "", "", configured.toString());
             return mirror;
         }
         if (getMirrorList() == null)
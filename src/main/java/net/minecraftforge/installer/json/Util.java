@@ -27,6 +27,8 @@ import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import net.minecraftforge.installer.DownloadUtils;
+import net.minecraftforge.installer.InstallRequest;
+import net.minecraftforge.installer.InstallerArchive;
 import net.minecraftforge.installer.actions.ProgressCallback;
 
 public class Util {
@@ -35,8 +37,14 @@ public class Util {
             .create();
 
     public static InstallV1 loadInstallProfile() {
+        return loadInstallProfile(InstallRequest.current().getArchive());
+    }
+
+    public static InstallV1 loadInstallProfile(InstallerArchive archive) {
         byte[] data = null;
-        try (InputStream stream = Util.class.getResourceAsStream("/install_profile.json")) {
+        try (InputStream stream = archive.getInputStream("install_profile.json")) {
+            if (stream == null)
+                throw new IOException("Missing install_profile.json in installer archive");
             data = readFully(stream);
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -61,7 +69,13 @@ public class Util {
     }
 
     public static Version loadVersion(Install profile) {
-        try (InputStream stream = Util.class.getResourceAsStream(profile.getJson())) {
+        return loadVersion(InstallRequest.current().getArchive(), profile);
+    }
+
+    public static Version loadVersion(InstallerArchive archive, Install profile) {
+        try (InputStream stream = archive.getInputStream(profile.getJson())) {
+            if (stream == null)
+                throw new IOException("Missing " + profile.getJson() + " in installer archive");
             return GSON.fromJson(new InputStreamReader(stream, StandardCharsets.UTF_8), Version.class);
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -69,24 +83,26 @@ public class Util {
     }
 
     public static Version getVanillaVersion(ProgressCallback callback, String version, File target) {
-        if (!target.exists()) {
-            Manifest manifest = DownloadUtils.downloadManifest(callback);
-            if (manifest == null)
-                return null;
-            Manifest.Info ver = manifest.get(version);
-            if (ver == null)
-                return null;
-            if (!callback.downloader(ver.getUrl())
-                    .localPath("minecraft/" + version + ".json")
-                    .sha(ver.sha1)
-                    .download(target))
-                return null;
-        }
-        try (InputStream stream = new FileInputStream(target)) {
-            return GSON.fromJson(new InputStreamReader(stream, StandardCharsets.UTF_8), Version.class);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        return callback.phase("manifest", () -> {
+            if (!target.exists()) {
+                Manifest manifest = DownloadUtils.downloadManifest(callback);
+                if (manifest == null)
+                    return null;
+                Manifest.Info ver = manifest.get(version);
+                if (ver == null)
+                    return null;
+                if (!callback.downloader(ver.getUrl())
+                        .localPath("minecraft/" + version + ".json")
+                        .sha(ver.sha1)
+                        .download(target))
+                    return null;
+            }
+            try (InputStream stream = new FileInputStream(target)) {
+                return GSON.fromJson(new InputStreamReader(stream, StandardCharsets.UTF_8), Version.class);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
     }
 
     public static Version getVersionUncached(ProgressCallback callback, String url) {
@@ -55,14 +55,13 @@ import javax.swing.JPanel;
 import javax.swing.JRadioButton;
 import javax.swing.JTextField;
 import javax.swing.border.LineBorder;
-import net.minecraftforge.installer.DownloadUtils;
+import net.minecraftforge.installer.InstallRequest;
 import net.minecraftforge.installer.SimpleInstaller;
 import net.minecraftforge.installer.actions.Action;
 import net.minecraftforge.installer.actions.ActionCanceledException;
 import net.minecraftforge.installer.actions.Actions;
 import net.minecraftforge.installer.actions.FatInstallerAction;
 import net.minecraftforge.installer.actions.ProgressCallback;
-import net.minecraftforge.installer.actions.ServerInstall;
 import net.minecraftforge.installer.actions.TargetValidator;
 import net.minecraftforge.installer.json.InstallV1;
 import net.minecraftforge.installer.json.OptionalLibrary;
@@ -174,7 +173,7 @@ public class InstallerPanel extends JPanel {
             logoSplash.add(version);
         }
 
-        if (DownloadUtils.OFFLINE_MODE) {
+        if (InstallRequest.current().isOffline()) {
             JLabel offline = new JLabel();
             offline.setFont(offline.getFont().deriveFont(Font.BOLD));
             offline.setForeground(Color.RED);
@@ -212,7 +211,7 @@ public class InstallerPanel extends JPanel {
         for (Actions action : Actions.values()) {
             if (action == Actions.CLIENT && profile.hideClient()) continue;
             if (action == Actions.SERVER && profile.hideServer()) continue;
-            if (action == Actions.FAT_INSTALLER && DownloadUtils.OFFLINE_MODE) continue;
+            if (action == Actions.FAT_INSTALLER && InstallRequest.current().isOffline()) continue;
 
             actions.put(action.name(), prog -> action.getAction(profile, prog));
             JRadioButton radioButton = TRANSLATIONS.radioButton(sba, action.getButtonLabel());
@@ -413,6 +412,7 @@ public class InstallerPanel extends JPanel {
         dialog.setVisible(true);
         int result = (Integer) (optionPane.getValue() != null ? optionPane.getValue() : -1);
         if (result == JOptionPane.OK_OPTION) {
+            InstallRequest request = InstallRequest.current().copy();
             if (action.get() == Actions.FAT_INSTALLER) {
                 if (fatIncludeMC.isSelected()) {
                     JOptionPane isOk = new JOptionPane(new JLabel(TRANSLATIONS.translate("installer.fat.includemc.warning")), JOptionPane.PLAIN_MESSAGE, JOptionPane.OK_CANCEL_OPTION);
@@ -423,19 +423,19 @@ public class InstallerPanel extends JPanel {
                     if (isOk.getValue() == null || (Integer) isOk.getValue() == JOptionPane.OK_CANCEL_OPTION) {
                         System.exit(0);
                     }
-                    FatInstallerAction.OPTIONS.add(FatInstallerAction.Options.MC_JAR);
+                    request.fatOption(FatInstallerAction.Options.MC_JAR);
 
                     okDialog.dispose();
                 }
                 if (fatIncludeMCLibs.isSelected()) {
-                    FatInstallerAction.OPTIONS.add(FatInstallerAction.Options.MC_LIBS);
+                    request.fatOption(FatInstallerAction.Options.MC_LIBS);
                 }
                 if (fatIncludeInstallerLibs.isSelected()) {
-                    FatInstallerAction.OPTIONS.add(FatInstallerAction.Options.INSTALLER_LIBS);
+                    request.fatOption(FatInstallerAction.Options.INSTALLER_LIBS);
                 }
                 targetDir = new File(installer.getParent(), installer.getName().replace(".jar", "-fat.jar"));
             } else if (action.get() == Actions.SERVER) {
-                ServerInstall.serverStarterJar = serverStarterJar.isSelected();
+                request.serverStarterJar(serverStarterJar.isSelected());
             }
 
             ProgressFrame prog = new ProgressFrame(monitor, Thread.currentThread()::interrupt, "installer.frame.installing", profile.getProfile(), profile.getVersion());
@@ -444,8 +444,8 @@ public class InstallerPanel extends JPanel {
                 Optional<OptionalListEntry> ent = this.optionals.stream().filter(e -> e.lib.getArtifact().equals(input)).findFirst();
                 return !ent.isPresent() || ent.get().isEnabled();
             };
-            Action action = actions.get(choiceButtonGroup.getSelection().getActionCommand()).apply(prog);
-            try {
+            try (InstallRequest.Binding binding = request.bind()) {
+                Action action = actions.get(choiceButtonGroup.getSelection().getActionCommand()).apply(prog);
                 prog.setVisible(true);
                 prog.toFront();
                 if (action.run(targetDir, optPred, installer)) {
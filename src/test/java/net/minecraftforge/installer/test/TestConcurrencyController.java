@@ -0,0 +1,68 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package net.minecraftforge.installer.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import net.minecraftforge.installer.ConcurrencyController;
+import org.junit.jupiter.api.Test;
+
+public class TestConcurrencyController {
+    @Test
+    public void testCongestionHalvesLimit() throws InterruptedException {
+        ConcurrencyController controller = new ConcurrencyController();
+        assertEquals(4, controller.getLimit());
+        try (ConcurrencyController.Permit permit = controller.acquire("https://example.com/a.jar")) {
+            ConcurrencyController.congested();
+        }
+        assertEquals(2, controller.getLimit());
+
+        // A second signal right after is the same congestion, and doesn't back off again
+        try (ConcurrencyController.Permit permit = controller.acquire("https://example.com/b.jar")) {
+            ConcurrencyController.congested();
+        }
+        assertEquals(2, controller.getLimit());
+    }
+
+    @Test
+    public void testPerHostCap() throws InterruptedException {
+        ConcurrencyController controller = new ConcurrencyController(16, 1);
+        ConcurrencyController.Permit first = controller.acquire("https://example.com/a.jar");
+
+        // Another host isn't held back by the first one
+        controller.acquire("https://example.org/a.jar").close();
+
+        AtomicBoolean started = new AtomicBoolean();
+        CountDownLatch done = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            try (ConcurrencyController.Permit permit = controller.acquire("https://example.com/b.jar")) {
+                started.set(true);
+            } catch (InterruptedException e) {
+                // Fails the test below
+            }
+            done.countDown();
+        });
+        thread.start();
+        Thread.sleep(100);
+        assertFalse(started.get());
+
+        first.close();
+        done.await();
+        assertTrue(started.get());
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package net.minecraftforge.installer.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.minecraftforge.installer.DownloadRegistry;
+import org.junit.jupiter.api.Test;
+
+public class TestDownloadRegistry {
+    @Test
+    public void testSameFileAndChecksumDownloadsOnce() {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            DownloadRegistry registry = new DownloadRegistry();
+            AtomicInteger runs = new AtomicInteger();
+            List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+            for (int x = 0; x < 10; x++) {
+                futures.add(registry.download(new File("libraries/a.jar"), "abc", () -> {
+                    runs.incrementAndGet();
+                    return true;
+                }, pool));
+            }
+            for (CompletableFuture<Boolean> future : futures)
+                assertTrue(future.join());
+            assertEquals(1, runs.get());
+            assertEquals(9, registry.getDuplicates());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testDifferentChecksumRunsAfterPrevious() {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            DownloadRegistry registry = new DownloadRegistry();
+            List<String> order = new ArrayList<>();
+            CompletableFuture<Boolean> first = registry.download(new File("libraries/a.jar"), "abc", () -> {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return false;
+                }
+                synchronized (order) {
+                    order.add("abc");
+                }
+                return true;
+            }, pool);
+            CompletableFuture<Boolean> second = registry.download(new File("libraries/a.jar"), "def", () -> {
+                synchronized (order) {
+                    order.add("def");
+                }
+                return false;
+            }, pool);
+
+            assertFalse(second.join());
+            assertTrue(first.join());
+            assertEquals("abc", order.get(0));
+            assertEquals("def", order.get(1));
+            assertSame(second, registry.get(new File("libraries/a.jar")));
+            assertEquals(0, registry.getDuplicates());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
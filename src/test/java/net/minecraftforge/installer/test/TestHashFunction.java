@@ -0,0 +1,61 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package net.minecraftforge.installer.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Random;
+import net.minecraftforge.installer.HashFunction;
+import org.junit.jupiter.api.Test;
+
+public class TestHashFunction {
+    @Test
+    public void testKnownValues() {
+        assertEquals("da39a3ee5e6b4b0d3255bfef95601890afd80709", HashFunction.SHA1.hash(""));
+        assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d", HashFunction.SHA1.hash("abc"));
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", HashFunction.SHA256.hash("abc"));
+        // Leading zero nibble, which the old BigInteger based encoding had to pad back in
+        assertEquals("0cc175b9c0f1b6a831c399e269772661", HashFunction.MD5.hash("a"));
+    }
+
+    @Test
+    public void testFileMatchesBytes() throws IOException {
+        byte[] data = new byte[1024 * 1024 + 123];
+        new Random(7).nextBytes(data);
+        Path file = Files.createTempFile("hash", ".bin");
+        try {
+            Files.write(file, data);
+            for (HashFunction func : HashFunction.values()) {
+                String expected = func.hash(data);
+                assertEquals(expected, func.hash(file));
+                assertEquals(expected, func.hash(new ByteArrayInputStream(data)));
+            }
+
+            Map<HashFunction, String> all = HashFunction.hashAll(file, EnumSet.allOf(HashFunction.class));
+            assertEquals(all, HashFunction.hashAll(new ByteArrayInputStream(data), EnumSet.allOf(HashFunction.class)));
+            for (HashFunction func : HashFunction.values())
+                assertEquals(func.hash(data), all.get(func));
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
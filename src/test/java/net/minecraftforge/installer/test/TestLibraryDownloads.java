@@ -0,0 +1,90 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package net.minecraftforge.installer.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import net.minecraftforge.installer.DownloadRegistry;
+import net.minecraftforge.installer.InstallRequest;
+import net.minecraftforge.installer.actions.DelegatingProgressCallback;
+import net.minecraftforge.installer.actions.LibraryDownloads;
+import net.minecraftforge.installer.actions.ProgressCallback;
+import net.minecraftforge.installer.json.Util;
+import net.minecraftforge.installer.json.Version.Library;
+import org.junit.jupiter.api.Test;
+
+public class TestLibraryDownloads {
+    @Test
+    public void testCancelEndsQueuedDownloads() throws Exception {
+        CountDownLatch requested = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            requested.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.start();
+
+        File dir = Files.createTempDirectory("libraries").toFile();
+        CountDownLatch finished = new CountDownLatch(1);
+        AtomicBoolean success = new AtomicBoolean(true);
+        ProgressCallback monitor = new DelegatingProgressCallback(ProgressCallback.TO_STD_OUT) {
+            @Override
+            public void phaseFinished(String phase, long nanos, boolean ok) {
+                success.set(ok);
+                finished.countDown();
+            }
+        };
+
+        // One download at a time, so the rest are still queued when canceled
+        try (InstallRequest.Binding binding = new InstallRequest().maxDownloads(1).bind()) {
+            List<Library> libraries = new ArrayList<>();
+            for (int x = 0; x < 5; x++) {
+                String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/lib" + x + ".jar";
+                libraries.add(Util.GSON.fromJson("{\"name\":\"test:lib" + x + ":1\",\"downloads\":{\"artifact\":{\"path\":\"test/lib" + x + "/1/lib" + x + "-1.jar\",\"url\":\"" + url + "\"}}}", Library.class));
+            }
+            LibraryDownloads downloads = new LibraryDownloads(monitor, new DownloadRegistry(), dir, s -> true, Collections.synchronizedList(new ArrayList<>()), new ArrayList<>());
+            downloads.submitAll(libraries, Collections.emptyList());
+
+            assertTrue(requested.await(10, TimeUnit.SECONDS), "First download never started");
+            downloads.cancel();
+            release.countDown();
+
+            assertTrue(finished.await(10, TimeUnit.SECONDS), "Libraries phase never ended");
+            assertFalse(success.get());
+            assertFalse(downloads.await(Collections.singletonList(new File(dir, "test/lib4/1/lib4-1.jar"))));
+        } finally {
+            release.countDown();
+            server.stop(0);
+        }
+    }
+}
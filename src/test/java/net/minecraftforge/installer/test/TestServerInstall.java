@@ -0,0 +1,112 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package net.minecraftforge.installer.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import net.minecraftforge.installer.InstallRequest;
+import net.minecraftforge.installer.InstallerArchive;
+import net.minecraftforge.installer.InstallerEngine;
+import net.minecraftforge.installer.actions.Actions;
+import org.junit.jupiter.api.Test;
+
+public class TestServerInstall {
+    private static final String PROFILE = "{\"spec\":1,\"profile\":\"test\",\"version\":\"test-1\",\"minecraft\":\"1.0\",\"json\":\"/version.json\","
+            + "\"serverJarPath\":\"{ROOT}/minecraft_server.{MINECRAFT_VERSION}.jar\",\"data\":{},"
+            + "\"processors\":[{\"jar\":\"test:writer:1\",\"args\":[\"{ROOT}\",\"{ROOT}/root.txt\"]}],"
+            + "\"libraries\":[{\"name\":\"test:writer:1\",\"downloads\":{\"artifact\":{\"path\":\"test/writer/1/writer-1.jar\",\"url\":\"http://localhost/writer-1.jar\"}}}]}";
+
+    /**
+     * A processor writing the {@code ROOT} it was given to a file.
+     */
+    public static class WriteRoot {
+        public static void main(String[] args) throws IOException {
+            Files.write(new File(args[1]).toPath(), args[0].getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testProcessorsSeeEachTarget() throws Exception {
+        Path dir = Files.createTempDirectory("servers");
+        File installer = dir.resolve("installer.jar").toFile();
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(installer.toPath()))) {
+            write(out, "install_profile.json", PROFILE.getBytes(StandardCharsets.UTF_8));
+            write(out, "version.json", "{\"id\":\"test-1\",\"libraries\":[]}".getBytes(StandardCharsets.UTF_8));
+        }
+
+        // Served from another install's libraries, so nothing is downloaded
+        Path cache = dir.resolve("cache");
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, WriteRoot.class.getName());
+        Files.createDirectories(cache.resolve("test/writer/1"));
+        String name = WriteRoot.class.getName().replace('.', '/') + ".class";
+        try (InputStream in = WriteRoot.class.getClassLoader().getResourceAsStream(name);
+             JarOutputStream out = new JarOutputStream(Files.newOutputStream(cache.resolve("test/writer/1/writer-1.jar")), manifest)) {
+            out.putNextEntry(new ZipEntry(name));
+            byte[] buf = new byte[8192];
+            for (int read = in.read(buf); read != -1; read = in.read(buf))
+                out.write(buf, 0, read);
+            out.closeEntry();
+        }
+
+        File first = dir.resolve("first").toFile();
+        File second = dir.resolve("second").toFile();
+        for (File target : Arrays.asList(first, second)) {
+            target.mkdirs();
+            Files.write(new File(target, "minecraft_server.1.0.jar").toPath(), new byte[0]);
+        }
+
+        try (InstallerArchive archive = InstallerArchive.open(installer)) {
+            InstallRequest request = new InstallRequest()
+                    .action(Actions.SERVER)
+                    .targets(Arrays.asList(first, second))
+                    .installer(installer)
+                    .archive(archive)
+                    .offline(true)
+                    .shareLibrariesFrom(Collections.singletonList(cache.toFile()));
+            assertTrue(new InstallerEngine().install(request));
+        }
+
+        for (File target : Arrays.asList(first, second)) {
+            String root = new String(Files.readAllBytes(new File(target, "root.txt").toPath()), StandardCharsets.UTF_8);
+            assertEquals(target.getAbsolutePath(), root);
+            assertTrue(new File(target, "libraries/test/writer/1/writer-1.jar").isFile());
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            assertFalse(files.anyMatch(p -> p.getFileName().toString().startsWith(".installer-staging")), "Staging directory left behind");
+        }
+    }
+
+    private static void write(JarOutputStream out, String name, byte[] data) throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(data);
+        out.closeEntry();
+    }
+}